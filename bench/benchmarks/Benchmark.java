@@ -0,0 +1,39 @@
+package benchmarks;
+
+
+/**
+ * One measured operation. The runner calls setUp once, then operation many
+ * times; whatever operation returns is kept so the work cannot be optimized
+ * away.
+ * 
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public abstract class Benchmark {
+    private String myName;
+
+    /**
+     * @param name name shown in the report
+     */
+    public Benchmark (String name) {
+        myName = name;
+    }
+
+    /**
+     * Returns name of the benchmark.
+     */
+    public String getName () {
+        return myName;
+    }
+
+    /**
+     * Prepares state used by operation.
+     */
+    public void setUp () throws Exception {
+        // nothing to prepare by default
+    }
+
+    /**
+     * Runs the measured operation once.
+     */
+    public abstract double operation ();
+}
@@ -0,0 +1,515 @@
+package benchmarks;
+
+import drawings.Drawable;
+import drawings.Mass;
+import drawings.Spring;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import mechanics.Assembly;
+import mechanics.Environment;
+import mechanics.Factory;
+import mechanics.Force;
+import mechanics.Frame;
+import mechanics.FramePainter;
+import mechanics.LevelOfDetail;
+import mechanics.Simulation;
+import mechanics.Snapshot;
+
+
+/**
+ * Measures the physics and loading hot paths and prints time and bytes
+ * allocated per operation, so every performance change can be compared
+ * before and after.
+ * 
+ * Usage: java benchmarks.BenchmarkRunner [-filter text] [-time ms] [-sizes 10,100,...]
+ *        [-budget bytes]
+ * 
+ * With -budget the runner exits with status 1 if any benchmark of the
+ * step allocates more bytes per operation once warmed up, so -budget 1
+ * checks that stepping creates no garbage beyond the odd object the JVM
+ * itself makes. Painting and loading create objects by design, so the
+ * budget does not apply to them. It also exits with status 1 if the JVM
+ * cannot count allocated bytes, rather than pass without measuring.
+ * 
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public final class BenchmarkRunner {
+    private static final Dimension SIZE = new Dimension(800, 800);
+    private static final double DT = 0.025;
+    private static final int[] DEFAULT_SIZES = {10, 100, 1000, 10000, 100000};
+    private static final long DEFAULT_TIME = 1000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final int THREADS = 2;
+    // names of benchmarks that run in every step, and so should allocate nothing;
+    // Environment.getAllForces returns a new force, steps use applyForces instead
+    private static final String[] STEP_BENCHMARKS = {"Force.sum", "Spring.update",
+                                                     "Mass.update", "Simulation.update/",
+                                                     "Simulation.updateThreads/",
+                                                     "Simulation.updateAssemblies/",
+                                                     "Simulation.collide/"};
+
+    // keeps results of operations alive
+    private static volatile double ourSink;
+
+    private BenchmarkRunner () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Start of the program.
+     * 
+     * @param args options
+     */
+    public static void main (String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        String filter = "";
+        long time = DEFAULT_TIME;
+        int[] sizes = DEFAULT_SIZES;
+        double budget = -1;
+        for (int k = 0; k < args.length; k++) {
+            if ("-filter".equals(args[k])) {
+                filter = args[++k];
+            }
+            else if ("-time".equals(args[k])) {
+                time = Long.parseLong(args[++k]);
+            }
+            else if ("-sizes".equals(args[k])) {
+                String[] values = args[++k].split(",");
+                sizes = new int[values.length];
+                for (int s = 0; s < values.length; s++) {
+                    sizes[s] = Integer.parseInt(values[s].trim());
+                }
+            }
+            else if ("-budget".equals(args[k])) {
+                budget = Double.parseDouble(args[++k]);
+            }
+        }
+        if (budget >= 0 && !canMeasureAllocation()) {
+            System.out.println("cannot check -budget: this JVM does not count allocated bytes");
+            System.exit(1);
+        }
+        System.out.println(String.format("%-40s %14s %14s %14s", "benchmark", "ns/op", "+-",
+                                         "bytes/op"));
+        List<String> overBudget = new ArrayList<String>();
+        for (Benchmark b : createBenchmarks(sizes)) {
+            if (b.getName().contains(filter) && measure(b, time) > budget && budget >= 0 &&
+                isStep(b)) {
+                overBudget.add(b.getName());
+            }
+        }
+        if (!overBudget.isEmpty()) {
+            System.out.println("over budget of " + budget + " bytes/op: " + overBudget);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns all benchmarks for the given model sizes.
+     * 
+     * @param sizes numbers of masses in generated models
+     */
+    public static List<Benchmark> createBenchmarks (int[] sizes) {
+        List<Benchmark> result = new ArrayList<Benchmark>();
+        result.add(new Benchmark("Force.sum") {
+            private Force myTotal = new Force();
+            private Force myOther = new Force(30, 2);
+
+            @Override
+            public double operation () {
+                myTotal.sum(myOther);
+                return myTotal.getXChange();
+            }
+        });
+        result.add(new Benchmark("Spring.update") {
+            private Simulation mySim;
+            private Assembly myAssembly;
+            private Spring mySpring;
+
+            @Override
+            public void setUp () throws Exception {
+                mySim = load(ModelGenerator.writeLattice(4));
+                myAssembly = mySim.getMyAssemblies().get(0);
+                mySpring = (Spring) find(myAssembly, Spring.class);
+            }
+
+            @Override
+            public double operation () {
+                mySpring.update(mySim, myAssembly, DT);
+                return mySpring.getDistanceBetweenEnds();
+            }
+        });
+        result.add(new Benchmark("Mass.update") {
+            private Simulation mySim;
+            private Assembly myAssembly;
+            private Mass myMass;
+
+            @Override
+            public void setUp () throws Exception {
+                mySim = load(ModelGenerator.writeLattice(4), BenchmarkRunner.class
+                        .getResource("/data/environment.xsp"));
+                myAssembly = mySim.getMyAssemblies().get(0);
+                myAssembly.updateCenterOfMass();
+                mySim.getEnvironment().prepare(mySim.getSize());
+                myMass = (Mass) find(myAssembly, Mass.class);
+            }
+
+            @Override
+            public double operation () {
+                myMass.update(mySim, myAssembly, DT);
+                return myMass.getX();
+            }
+        });
+        result.add(new Benchmark("Environment.getAllForces") {
+            private Environment myEnvironment;
+            private Assembly myAssembly;
+            private Mass myMass;
+
+            @Override
+            public void setUp () throws Exception {
+                Simulation sim = load(ModelGenerator.writeLattice(4), BenchmarkRunner.class
+                        .getResource("/data/environment.xsp"));
+                myAssembly = sim.getMyAssemblies().get(0);
+                myAssembly.updateCenterOfMass();
+                myEnvironment = sim.getEnvironment();
+                myEnvironment.prepare(sim.getSize());
+                myMass = (Mass) find(myAssembly, Mass.class);
+            }
+
+            @Override
+            public double operation () {
+                return myEnvironment.getAllForces(myMass, myAssembly).getXChange();
+            }
+        });
+        for (final int size : sizes) {
+            result.add(new Benchmark("Simulation.update/" + size) {
+                private Simulation mySim;
+
+                @Override
+                public void setUp () throws Exception {
+                    mySim = load(ModelGenerator.writeLattice(size), BenchmarkRunner.class
+                            .getResource("/data/environment.xsp"));
+                }
+
+                @Override
+                public double operation () {
+                    mySim.update(DT);
+                    return mySim.getMyAssemblies().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            // one assembly, whose springs and masses are split across threads once large
+            result.add(new Benchmark("Simulation.updateThreads/" + size) {
+                private Simulation mySim;
+
+                @Override
+                public void setUp () throws Exception {
+                    mySim = load(ModelGenerator.writeLattice(size), BenchmarkRunner.class
+                            .getResource("/data/environment.xsp"));
+                    mySim.setThreadCount(THREADS);
+                }
+
+                @Override
+                public double operation () {
+                    mySim.update(DT);
+                    return mySim.getMyAssemblies().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            // as many assemblies as threads, each stepped on a thread of its own
+            result.add(new Benchmark("Simulation.updateAssemblies/" + size) {
+                private Simulation mySim;
+
+                @Override
+                public void setUp () throws Exception {
+                    File lattice = ModelGenerator.writeLattice(size / THREADS);
+                    mySim = load(lattice, BenchmarkRunner.class
+                            .getResource("/data/environment.xsp"));
+                    for (int k = 1; k < THREADS; k++) {
+                        new Factory().loadModel(mySim, lattice);
+                    }
+                    mySim.setThreadCount(THREADS);
+                }
+
+                @Override
+                public double operation () {
+                    mySim.update(DT);
+                    return mySim.getMyAssemblies().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            // two lattices on top of each other: every mass touches the other assembly
+            result.add(new Benchmark("Simulation.collide/" + size) {
+                private Simulation mySim;
+
+                @Override
+                public void setUp () throws Exception {
+                    File lattice = ModelGenerator.writeLattice(size / 2);
+                    mySim = load(lattice);
+                    new Factory().loadModel(mySim, lattice);
+                    mySim.setMassCollisions(true);
+                }
+
+                @Override
+                public double operation () {
+                    mySim.update(DT);
+                    return mySim.getMyAssemblies().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            result.add(new Benchmark("Simulation.paint/" + size) {
+                private Simulation mySim;
+                private Graphics2D myPen;
+
+                @Override
+                public void setUp () throws Exception {
+                    mySim = load(ModelGenerator.writeLattice(size));
+                    myPen = createPen();
+                }
+
+                @Override
+                public double operation () {
+                    mySim.paint(myPen);
+                    return mySim.getMyAssemblies().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            result.add(new Benchmark("Frame.paint/" + size) {
+                private Frame myFrame;
+                private Graphics2D myPen;
+
+                @Override
+                public void setUp () throws Exception {
+                    myFrame = new Frame();
+                    myFrame.capture(load(ModelGenerator.writeLattice(size)));
+                    myPen = createPen();
+                }
+
+                @Override
+                public double operation () {
+                    myFrame.paint(myPen);
+                    return myFrame.size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            result.add(new Benchmark("LevelOfDetail.paint/" + size) {
+                private Frame myFrame;
+                private Graphics2D myPen;
+
+                @Override
+                public void setUp () throws Exception {
+                    myFrame = new Frame();
+                    myFrame.capture(load(ModelGenerator.writeLattice(size)),
+                                    new LevelOfDetail());
+                    myPen = createPen();
+                }
+
+                @Override
+                public double operation () {
+                    myFrame.paint(myPen);
+                    return myFrame.size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            // scene at rest: after the first call nothing needs drawing again
+            result.add(new Benchmark("FramePainter.paint/" + size) {
+                private Frame myFrame;
+                private FramePainter myPainter;
+                private Graphics2D myPen;
+
+                @Override
+                public void setUp () throws Exception {
+                    myFrame = new Frame();
+                    myFrame.capture(load(ModelGenerator.writeLattice(size)));
+                    myPainter = new FramePainter();
+                    myPen = createPen();
+                }
+
+                @Override
+                public double operation () {
+                    myPainter.paint(myPen, myFrame, SIZE.width, SIZE.height);
+                    return myPainter.getRedrawnArea();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            result.add(new Benchmark("Factory.loadModel/" + size) {
+                private File myFile;
+
+                @Override
+                public void setUp () throws Exception {
+                    myFile = ModelGenerator.writeLattice(size);
+                }
+
+                @Override
+                public double operation () {
+                    return load(myFile).getMyAssemblies().get(0).getMyDrawings().size();
+                }
+            });
+        }
+        for (final int size : sizes) {
+            result.add(new Benchmark("Snapshot.load/" + size) {
+                private File myFile;
+
+                @Override
+                public void setUp () throws Exception {
+                    myFile = File.createTempFile("lattice", Snapshot.EXTENSION);
+                    myFile.deleteOnExit();
+                    Snapshot.save(load(ModelGenerator.writeLattice(size)), myFile);
+                }
+
+                @Override
+                public double operation () {
+                    Simulation sim = new Simulation(SIZE);
+                    try {
+                        Snapshot.load(sim, myFile);
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return sim.getMyAssemblies().get(0).getMyDrawings().size();
+                }
+            });
+        }
+        return result;
+    }
+
+    private static boolean isStep (Benchmark b) {
+        for (String name : STEP_BENCHMARKS) {
+            if (b.getName().startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Graphics2D createPen () {
+        BufferedImage image = new BufferedImage(SIZE.width, SIZE.height,
+                                                BufferedImage.TYPE_INT_RGB);
+        return image.createGraphics();
+    }
+
+    private static Simulation load (File model, java.net.URL environment) throws Exception {
+        Simulation sim = load(model);
+        new Factory().loadModel(sim, new File(environment.toURI()));
+        return sim;
+    }
+
+    private static Simulation load (File model) {
+        Simulation sim = new Simulation(SIZE);
+        new Factory().loadModel(sim, model);
+        return sim;
+    }
+
+    private static Drawable find (Assembly assembly, Class<?> type) {
+        for (Drawable d : assembly.getMyDrawings()) {
+            if (type == d.getClass()) {
+                return d;
+            }
+        }
+        throw new IllegalStateException("no " + type.getSimpleName() + " in model");
+    }
+
+    // prints and returns bytes allocated per operation
+    private static double measure (Benchmark b, long time) throws Exception {
+        b.setUp();
+        for (int k = 0; k < WARMUP_ROUNDS; k++) {
+            runRound(b, time);
+        }
+        double[] nanos = new double[MEASURED_ROUNDS];
+        double bytes = 0;
+        for (int k = 0; k < MEASURED_ROUNDS; k++) {
+            double[] round = runRound(b, time);
+            nanos[k] = round[0];
+            bytes += round[1] / MEASURED_ROUNDS;
+        }
+        double mean = 0;
+        for (double n : nanos) {
+            mean += n / nanos.length;
+        }
+        double variance = 0;
+        for (double n : nanos) {
+            variance += (n - mean) * (n - mean) / nanos.length;
+        }
+        System.out.println(String.format("%-40s %14.1f %14.1f %14.1f", b.getName(), mean,
+                                         Math.sqrt(variance), bytes));
+        return bytes;
+    }
+
+    // returns nanoseconds and bytes allocated per operation
+    private static double[] runRound (Benchmark b, long time) {
+        long deadline = System.nanoTime() + (long) (time * NANOS_PER_MILLI);
+        long measuringBytes = getMeasuringBytes();
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = 0;
+        // clock is read once per batch so that it does not dominate cheap operations
+        long batch = 1;
+        double sink = 0;
+        long now = start;
+        do {
+            long batchStart = now;
+            sink += runBatch(b, batch);
+            operations += batch;
+            now = System.nanoTime();
+            if (now - batchStart < NANOS_PER_MILLI) {
+                batch *= 2;
+            }
+        }
+        while (now < deadline);
+        long bytes = allocatedBytes() - bytesBefore - measuringBytes;
+        ourSink = sink;
+        return new double[] {(double) (now - start) / operations, (double) bytes / operations};
+    }
+
+    private static double runBatch (Benchmark b, long count) {
+        double sink = 0;
+        for (long k = 0; k < count; k++) {
+            sink += b.operation();
+        }
+        return sink;
+    }
+
+    // bytes that asking for the allocated bytes allocates itself
+    private static long getMeasuringBytes () {
+        long first = allocatedBytes();
+        return allocatedBytes() - first;
+    }
+
+    /**
+     * Returns true if the JVM can count the bytes each thread allocates.
+     */
+    public static boolean canMeasureAllocation () {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean &&
+               ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported() &&
+               ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Returns bytes allocated so far by the current thread, or 0 if the JVM
+     * cannot tell.
+     */
+    public static long allocatedBytes () {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * Writes square lattice models in .xsp format. Every mass is joined to its
+ * right and lower neighbours by springs; every seventh joint is a muscle.
+ * 
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public final class ModelGenerator {
+    private static final double AREA = 700;
+    private static final double MARGIN = 50;
+    private static final double MAX_SPACING = 20;
+    private static final double SPRING_CONSTANT = 0.05;
+    private static final double MUSCLE_AMPLITUDE = 1;
+    private static final int MUSCLE_PERIOD = 7;
+
+    private ModelGenerator () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Writes a lattice of about the given number of masses to a temporary file.
+     * 
+     * @param masses number of masses
+     */
+    public static File writeLattice (int masses) throws IOException {
+        File file = File.createTempFile("lattice" + masses + "_", ".xsp");
+        file.deleteOnExit();
+        Writer out = new BufferedWriter(new FileWriter(file));
+        try {
+            writeLattice(masses, out);
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Writes a lattice of about the given number of masses.
+     * 
+     * @param masses number of masses
+     * @param out where to write the model
+     */
+    public static void writeLattice (int masses, Writer out) throws IOException {
+        int side = (int) Math.ceil(Math.sqrt(masses));
+        double spacing = Math.min(MAX_SPACING, AREA / side);
+        for (int id = 0; id < masses; id++) {
+            out.write("mass " + id + " " + (MARGIN + (id % side) * spacing) + " " +
+                      (MARGIN + (id / side) * spacing) + " 1.0\n");
+        }
+        int joint = 0;
+        for (int id = 0; id < masses; id++) {
+            if ((id % side) + 1 < side && id + 1 < masses) {
+                writeJoint(out, id, id + 1, spacing, joint++);
+            }
+            if (id + side < masses) {
+                writeJoint(out, id, id + side, spacing, joint++);
+            }
+        }
+    }
+
+    private static void writeJoint (Writer out, int start, int end, double length, int joint)
+        throws IOException {
+        if (joint % MUSCLE_PERIOD == 0) {
+            out.write("muscle " + start + " " + end + " " + length + " " + SPRING_CONSTANT + " " +
+                      MUSCLE_AMPLITUDE + "\n");
+        }
+        else {
+            out.write("spring " + start + " " + end + " " + length + " " + SPRING_CONSTANT +
+                      "\n");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import drawings.Drawable;
+import drawings.Mass;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import mechanics.Assembly;
+import mechanics.Canvas;
+import mechanics.Factory;
+import mechanics.Integrator;
+import mechanics.Metrics;
+import mechanics.RungeKutta4;
+import mechanics.SemiImplicitEuler;
+import mechanics.Simulation;
+import mechanics.SleepPolicy;
+import mechanics.Snapshot;
+import mechanics.VelocityVerlet;
+
+
+/**
+ * Runs a simulation without any window and reports how fast it stepped.
+ *
+ * Usage: java Headless [-steps n] [-seconds s] [-dt t] [-size WxH] [-threads n] [-dump]
+ *        [-integrator euler|verlet|rk4] [-substeps n] [-constraints n] [-jacobi]
+ *        [-collisions] [-sleep] [-metrics] [-save out.xsb] file.xsp ...
+ *
+ * Files are loaded in the given order; a file named environment.xsp sets the
+ * environment, a snapshot replaces everything loaded so far, any other file
+ * adds an assembly. Without -steps or -seconds the simulation runs for
+ * DEFAULT_STEPS steps. With -save the final state is written as a snapshot,
+ * so -steps 0 -save converts .xsp files. -substeps lets each step be split
+ * into up to n substeps when the stiffest spring needs it; -constraints
+ * solves all bars and muscles together n times per step; -collisions makes
+ * masses of different assemblies bounce off each other; -sleep stops stepping
+ * assemblies that have come to rest. -metrics prints where the time of a
+ * step went, against the same budget as the window: one frame period.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public final class Headless {
+    // constants
+    private static final Dimension SIZE = new Dimension(800, 800);
+    private static final int DEFAULT_STEPS = 1000;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MICRO = 1e3;
+    private static final String USAGE =
+            "usage: java Headless [-steps n] [-seconds s] [-dt t] [-size WxH] [-threads n] " +
+            "[-dump] [-integrator euler|verlet|rk4] [-substeps n] [-constraints n] " +
+            "[-jacobi] [-collisions] [-sleep] [-metrics] [-save out.xsb] file.xsp ...";
+
+    private Headless () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Start of the program.
+     *
+     * @param args options followed by model files
+     */
+    public static void main (String[] args) {
+        // Dimension still comes from java.awt, but nothing may open a window
+        System.setProperty("java.awt.headless", "true");
+        long steps = -1;
+        double seconds = -1;
+        double dt = (double) Canvas.FRAMES_PER_SECOND / Canvas.ONE_SECOND;
+        Dimension size = SIZE;
+        int threads = 1;
+        boolean dump = false;
+        File save = null;
+        Integrator integrator = new SemiImplicitEuler();
+        int substeps = 1;
+        int constraintIterations = 0;
+        boolean jacobi = false;
+        boolean collisions = false;
+        boolean sleep = false;
+        boolean metrics = false;
+        List<File> files = new ArrayList<File>();
+        try {
+            for (int k = 0; k < args.length; k++) {
+                if ("-steps".equals(args[k])) {
+                    steps = Long.parseLong(args[++k]);
+                }
+                else if ("-seconds".equals(args[k])) {
+                    seconds = Double.parseDouble(args[++k]);
+                }
+                else if ("-dt".equals(args[k])) {
+                    dt = Double.parseDouble(args[++k]);
+                }
+                else if ("-size".equals(args[k])) {
+                    String[] sides = args[++k].split("x");
+                    size = new Dimension(Integer.parseInt(sides[0]), Integer.parseInt(sides[1]));
+                }
+                else if ("-threads".equals(args[k])) {
+                    threads = Integer.parseInt(args[++k]);
+                }
+                else if ("-dump".equals(args[k])) {
+                    dump = true;
+                }
+                else if ("-integrator".equals(args[k])) {
+                    integrator = createIntegrator(args[++k]);
+                }
+                else if ("-substeps".equals(args[k])) {
+                    substeps = Integer.parseInt(args[++k]);
+                }
+                else if ("-constraints".equals(args[k])) {
+                    constraintIterations = Integer.parseInt(args[++k]);
+                }
+                else if ("-jacobi".equals(args[k])) {
+                    jacobi = true;
+                }
+                else if ("-collisions".equals(args[k])) {
+                    collisions = true;
+                }
+                else if ("-sleep".equals(args[k])) {
+                    sleep = true;
+                }
+                else if ("-metrics".equals(args[k])) {
+                    metrics = true;
+                }
+                else if ("-save".equals(args[k])) {
+                    save = new File(args[++k]);
+                }
+                else {
+                    files.add(new File(args[k]));
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            exit("bad arguments: " + e.getMessage());
+        }
+        if (files.isEmpty()) {
+            exit("no model files given");
+        }
+        if (steps < 0 && seconds < 0) {
+            steps = DEFAULT_STEPS;
+        }
+
+        Simulation sim = new Simulation(size);
+        sim.setThreadCount(threads);
+        sim.setIntegrator(integrator);
+        sim.setMaxSubsteps(substeps);
+        sim.setConstraintIterations(constraintIterations);
+        sim.setJacobiConstraints(jacobi);
+        sim.setMassCollisions(collisions);
+        if (sleep) {
+            sim.setSleepPolicy(new SleepPolicy());
+        }
+        if (metrics) {
+            // budget of the window, so reports of both can be compared whatever dt is
+            sim.setMetrics(new Metrics(TimeUnit.MILLISECONDS.toNanos(Canvas.ONE_SECOND /
+                                                                     Canvas.FRAMES_PER_SECOND)));
+        }
+        Factory factory = new Factory();
+        for (File f : files) {
+            if (!f.isFile()) {
+                exit("cannot read " + f);
+            }
+            factory.loadModel(sim, f);
+        }
+
+        long stepsTaken = 0;
+        long start = System.nanoTime();
+        long deadline = (seconds < 0) ? Long.MAX_VALUE :
+                        start + (long) (seconds * NANOS_PER_SECOND);
+        while ((steps < 0 || stepsTaken < steps) && System.nanoTime() < deadline) {
+            sim.update(dt);
+            stepsTaken++;
+        }
+        double elapsed = (System.nanoTime() - start) / NANOS_PER_SECOND;
+
+        System.out.println("steps: " + stepsTaken);
+        System.out.println(String.format("elapsed: %.3f s", elapsed));
+        System.out.println(String.format("steps/second: %.1f", stepsTaken / elapsed));
+        report(sim, dump);
+        if (sim.getMetrics() != null) {
+            for (String line : sim.getMetrics().getSummary()) {
+                System.out.println(line);
+            }
+        }
+        if (save != null) {
+            try {
+                Snapshot.save(sim, save);
+            }
+            catch (IOException e) {
+                exit("cannot write " + save + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static Integrator createIntegrator (String name) {
+        if ("euler".equals(name)) {
+            return new SemiImplicitEuler();
+        }
+        else if ("verlet".equals(name)) {
+            return new VelocityVerlet();
+        }
+        else if ("rk4".equals(name)) {
+            return new RungeKutta4();
+        }
+        throw new IllegalArgumentException("unknown integrator " + name);
+    }
+
+    private static void report (Simulation sim, boolean dump) {
+        List<Assembly> assemblies = sim.getMyAssemblies();
+        for (int k = 0; k < assemblies.size(); k++) {
+            Assembly a = assemblies.get(k);
+            a.updateCenterOfMass();
+            double stepTime = a.getTotalStepTime() / Math.max(1.0, a.getStepCount()) /
+                              NANOS_PER_MICRO;
+            System.out.println(String.format("assembly %d: %d masses, %d drawables, " +
+                                             "center of mass (%.3f, %.3f), %.1f us/step%s",
+                                             k, a.getMasses().size(), a.getMyDrawings().size(),
+                                             a.getXCenterOfMass(), a.getYCenterOfMass(),
+                                             stepTime, a.isAsleep() ? ", asleep" : ""));
+            if (dump) {
+                for (Drawable d : a.getMyDrawings()) {
+                    if ("mass".equals(d.getClassName())) {
+                        Mass m = (Mass) d;
+                        System.out.println(String.format("  mass %d (%.6f, %.6f) v (%.6f, %.6f)",
+                                                         m.getID(), m.getX(), m.getY(),
+                                                         m.getXVelocity(), m.getYVelocity()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void exit (String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+}
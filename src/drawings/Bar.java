@@ -1,7 +1,6 @@
 package drawings;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import mechanics.Assembly;
 import mechanics.Simulation;
 
@@ -33,8 +32,8 @@ public class Bar extends Spring {
     }
 
     @Override
-    public void chooseLineStyle (Graphics2D pen) {
-        pen.setColor(Color.BLACK);
+    public Color getLineColor () {
+        return Color.BLACK;
     }
 
     @Override
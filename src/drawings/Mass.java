@@ -5,23 +5,24 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import mechanics.Assembly;
-import mechanics.Canvas;
 import mechanics.Force;
+import mechanics.MassStore;
+import mechanics.Metrics;
 import mechanics.Simulation;
 
 /**
+ * View onto one slot of a MassStore. A mass that does not belong to an
+ * assembly keeps its state in a private single-slot store.
+ * 
  * @author Robert C. Duvall, edited by Jei Yoo & Volodymyr Zavidovych
  */
 public class Mass implements Drawable {
     // state
-    private Point2D myCenter;
-    private Force myVelocity;
+    private MassStore myStore;
+    private int mySlot;
     private Dimension mySize;
     private final int mySizeConstant = 16;
     private int myID;
-    private double myMass;
-    private Force myAcceleration;
-    private boolean myMassIsFixed;
     private final double myScaleConstant = -2.0;
 
     /**
@@ -31,13 +32,23 @@ public class Mass implements Drawable {
      * @param mass is the mass(weight) value of the Mass
      */
     public Mass (int id, double x, double y, double mass) {
-        myAcceleration = new Force();
-        myMass = mass;
         myID = id;
-        setCenter(x, y);
-        setVelocity(0, 0);
+        myStore = new MassStore(1);
+        mySlot = myStore.add(this, id, x, y, 0, 0, mass);
+        mySize = new Dimension(mySizeConstant, mySizeConstant);
+    }
+
+    /**
+     * Constructs a view onto a slot that is already filled in.
+     * 
+     * @param store store holding the mass
+     * @param slot slot of the mass in the store
+     */
+    public Mass (MassStore store, int slot) {
+        myID = store.getID(slot);
+        myStore = store;
+        mySlot = slot;
         mySize = new Dimension(mySizeConstant, mySizeConstant);
-        myMassIsFixed = myMass <= 0;
     }
 
     @Override
@@ -48,16 +59,21 @@ public class Mass implements Drawable {
 
     @Override
     public void update (Simulation canvas, Assembly assembly, double dt) {
-        applyForce(canvas.getEnvironment().getAllForces(this, assembly));
+        Metrics metrics = canvas.getMetrics();
+        long start = Metrics.startPhase(metrics);
+        canvas.getEnvironment().applyForces(this, assembly);
+        Metrics.endPhase(metrics, Metrics.FORCES, start);
         // convert force back into Mover's velocity
-        myAcceleration.scale(1.0 / myMass);
-        getVelocity().sum(myAcceleration);
-        myAcceleration.reset();
-        getBounce(canvas);
+        double mass = getMass();
+        double scale = assembly.getImpulseScale();
+        myStore.setVelocity(mySlot,
+                            getXVelocity() + myStore.getXForce(mySlot) / mass * scale,
+                            getYVelocity() + myStore.getYForce(mySlot) / mass * scale);
+        myStore.clearForce(mySlot);
+        bounce(canvas);
         // move mass by velocity if mass isn't fixed
-        if (!myMassIsFixed) {
-            myCenter.setLocation(myCenter.getX() + myVelocity.getXChange() * dt,
-                                 myCenter.getY() + myVelocity.getYChange() * dt);
+        if (!isFixed()) {
+            setCenter(getX() + getXVelocity() * dt, getY() + getYVelocity() * dt);
         }
     }
 
@@ -66,7 +82,15 @@ public class Mass implements Drawable {
      *        force to be applied to this mass
      */
     public void applyForce (Force f) {
-        myAcceleration.sum(f);
+        applyForce(f.getXChange(), f.getYChange());
+    }
+
+    /**
+     * @param dx x-change of force to be applied to this mass
+     * @param dy y-change of force to be applied to this mass
+     */
+    public void applyForce (double dx, double dy) {
+        myStore.addForce(mySlot, dx, dy);
     }
 
     @Override
@@ -79,41 +103,113 @@ public class Mass implements Drawable {
         return myID == id;
     }
 
-    // check for move out of bounds
-    private void getBounce (Simulation canvas) {
+    /**
+     * Returns id of this mass.
+     */
+    public int getID () {
+        return myID;
+    }
+
+    /**
+     * Moves this mass's state into the given store.
+     * 
+     * @param store store that will hold this mass from now on
+     */
+    public void moveTo (MassStore store) {
+        int slot = store.add(this, myID, getX(), getY(), getXVelocity(), getYVelocity(),
+                             getMass());
+        store.addForce(slot, myStore.getXForce(mySlot), myStore.getYForce(mySlot));
+        myStore.remove(mySlot);
+        myStore = store;
+        mySlot = slot;
+    }
+
+    /**
+     * Returns true if this mass keeps its state in the given store.
+     * 
+     * @param store store to check
+     */
+    public boolean isStoredIn (MassStore store) {
+        return myStore == store;
+    }
+
+    /**
+     * Called by the store when this mass is moved to a different slot.
+     * 
+     * @param slot new slot of this mass
+     */
+    public void relocate (int slot) {
+        mySlot = slot;
+    }
+
+    /**
+     * Returns slot of this mass in its store.
+     */
+    public int getSlot () {
+        return mySlot;
+    }
+
+    /**
+     * Keeps this mass inside the walled area, reflecting its velocity off
+     * any wall it crossed.
+     * 
+     * @param canvas simulation that has the walls
+     */
+    public void bounce (Simulation canvas) {
         Dimension bounds = canvas.getSize();
         int walledAreaOffset = canvas.getMyWalledAreaOffset();
         applyBounceForce(bounds, walledAreaOffset);
     }
 
     private void applyBounceForce (Dimension bounds, int walledAreaOffset) {
-        Force normal = new Force();
+        // unit normal of the wall that was hit, if any
+        int xNormal = 0;
+        int yNormal = 0;
         if (getLeft() < -walledAreaOffset) {
-            normal = new Force(Canvas.RIGHT_ANGLE, 1);
-            setCenter((getSize().width / 2) - walledAreaOffset, getCenter().getY());
+            xNormal = 1;
+            setCenter((getSize().width / 2) - walledAreaOffset, getY());
         }
         else if (getRight() > bounds.width + walledAreaOffset) {
-            normal = new Force(Canvas.LEFT_ANGLE, 1);
-            setCenter(bounds.width - getSize().width / 2 + walledAreaOffset, getCenter().getY());
+            xNormal = -1;
+            setCenter(bounds.width - getSize().width / 2 + walledAreaOffset, getY());
         }
         if (getTop() < -walledAreaOffset) {
-            normal = new Force(Canvas.DOWN_ANGLE, 1);
-            setCenter(getCenter().getX(), (getSize().height / 2) - walledAreaOffset);
+            xNormal = 0;
+            yNormal = 1;
+            setCenter(getX(), (getSize().height / 2) - walledAreaOffset);
         }
         else if (getBottom() > bounds.height + walledAreaOffset) {
-            normal = new Force(Canvas.UP_ANGLE, 1);
-            setCenter(getCenter().getX(), bounds.height - getSize().height / 2 + walledAreaOffset);
+            xNormal = 0;
+            yNormal = -1;
+            setCenter(getX(), bounds.height - getSize().height / 2 + walledAreaOffset);
         }
-        normal.scale(myScaleConstant * normal.getRelativeMagnitude(myVelocity) *
-                     myVelocity.getMagnitude());
-        myVelocity.sum(normal);
+        // reflect velocity component along the normal
+        double scale = myScaleConstant * (getXVelocity() * xNormal + getYVelocity() * yNormal);
+        myStore.setVelocity(mySlot, getXVelocity() + scale * xNormal,
+                            getYVelocity() + scale * yNormal);
     }
 
     /**
      * Returns shape's velocity.
      */
     public Force getVelocity () {
-        return myVelocity;
+        Force velocity = new Force();
+        velocity.setComponents(getXVelocity(), getYVelocity());
+        return velocity;
+    }
+
+    /**
+     * Returns x component of shape's velocity.
+     */
+    public double getXVelocity () {
+        return myStore.getXVelocity(mySlot);
+    }
+
+    /**
+     * Returns y component of shape's velocity.
+     */
+    public double getYVelocity () {
+        return myStore.getYVelocity(mySlot);
     }
 
     /**
@@ -123,14 +219,29 @@ public class Mass implements Drawable {
      * @param magnitude sets velocity magnitude
      */
     public void setVelocity (double direction, double magnitude) {
-        myVelocity = new Force(direction, magnitude);
+        myStore.setVelocity(mySlot, magnitude * Math.cos(Math.toRadians(direction)),
+                            magnitude * Math.sin(Math.toRadians(direction)));
     }
 
     /**
      * Returns shape's center.
      */
     public Point2D getCenter () {
-        return myCenter;
+        return new Point2D.Double(getX(), getY());
+    }
+
+    /**
+     * Returns x coordinate of shape's center.
+     */
+    public double getX () {
+        return myStore.getX(mySlot);
+    }
+
+    /**
+     * Returns y coordinate of shape's center.
+     */
+    public double getY () {
+        return myStore.getY(mySlot);
     }
 
     /**
@@ -140,7 +251,7 @@ public class Mass implements Drawable {
      * @param y sets y coordinate of the mass.
      */
     public void setCenter (double x, double y) {
-        myCenter = new Point2D.Double(x, y);
+        myStore.setPosition(mySlot, x, y);
     }
 
     /**
@@ -150,36 +261,36 @@ public class Mass implements Drawable {
      * @param angle determines the angle of the change.
      */
     public void shiftCenter (double increment, double angle) {
-        setCenter(getCenter().getX() + increment * Math.cos(Math.toRadians(angle)),
-                  getCenter().getY() + increment * Math.sin(Math.toRadians(angle)));
+        setCenter(getX() + increment * Math.cos(Math.toRadians(angle)),
+                  getY() + increment * Math.sin(Math.toRadians(angle)));
     }
 
     /**
      * Get the mass value.
      */
     public double getMass () {
-        return myMass;
+        return myStore.getMass(mySlot);
     }
 
     /**
      * Returns shape's left-most coordinate.
      */
     public int getLeft () {
-        return (int) (getCenter().getX() - getSize().width / 2);
+        return (int) (getX() - getSize().width / 2);
     }
 
     /**
      * Returns shape's top-most coordinate.
      */
     public int getTop () {
-        return (int) (getCenter().getY() - getSize().height / 2);
+        return (int) (getY() - getSize().height / 2);
     }
 
     /**
      * Returns shape's right-most coordinate.
      */
     public int getRight () {
-        return (int) (getCenter().getX() + getSize().width / 2);
+        return (int) (getX() + getSize().width / 2);
     }
 
     /**
@@ -188,14 +299,14 @@ public class Mass implements Drawable {
      * @return bottom-most coordinate
      */
     public int getBottom () {
-        return (int) (getCenter().getY() + getSize().height / 2);
+        return (int) (getY() + getSize().height / 2);
     }
 
     /**
      * Reports fixed-ess state.
      */
     public boolean isFixed () {
-        return myMassIsFixed;
+        return myStore.isFixed(mySlot);
     }
 
     /**
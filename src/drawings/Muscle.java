@@ -1,7 +1,6 @@
 package drawings;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import mechanics.Assembly;
 import mechanics.Canvas;
 import mechanics.Simulation;
@@ -41,6 +40,17 @@ public class Muscle extends Spring {
         myMuscleAge += dt;
     }
 
+    /**
+     * changes muscle's natural length and ages it, leaving its masses to
+     * be moved by a constraint solver
+     * 
+     * @param dt elapsed time
+     */
+    public void advance (double dt) {
+        updateMuscleNaturalLength();
+        myMuscleAge += dt;
+    }
+
     /**
      * changes muscle's natural strength as it extends and compresses.
      */
@@ -50,19 +60,48 @@ public class Muscle extends Spring {
         setLength(newNaturalLength);
     }
 
+    /**
+     * gets amplitude of muscle movement
+     */
+    public double getAmplitude () {
+        return myAmplitude;
+    }
+
+    /**
+     * gets length the muscle oscillates around
+     */
+    public double getInitialLength () {
+        return myInitialLength;
+    }
+
+    /**
+     * gets time the muscle has been moving
+     */
+    public double getMuscleAge () {
+        return myMuscleAge;
+    }
+
+    /**
+     * sets time the muscle has been moving
+     * 
+     * @param age new age of the muscle
+     */
+    public void setMuscleAge (double age) {
+        myMuscleAge = age;
+    }
+
     @Override
     public String getClassName () {
         return "muscle";
     }
 
     @Override
-    public void chooseLineStyle (Graphics2D pen) {
-        double len = getDistanceBetweenEnds() - myInitialLength;
-        if (len < 0) {
-            pen.setColor(Color.BLUE);
+    public Color getLineColor () {
+        if (isShorterThan(myInitialLength)) {
+            return Color.BLUE;
         }
         else {
-            pen.setColor(Color.RED);
+            return Color.RED;
         }
     }
 }
@@ -35,10 +35,10 @@ public class Spring implements Drawable {
 
     @Override
     public void paint (Graphics2D pen) {
-        int xStart = (int) myStart.getCenter().getX();
-        int yStart = (int) myStart.getCenter().getY();
-        int xEnd = (int) myEnd.getCenter().getX();
-        int yEnd = (int) myEnd.getCenter().getY();
+        int xStart = (int) myStart.getX();
+        int yStart = (int) myStart.getY();
+        int xEnd = (int) myEnd.getX();
+        int yEnd = (int) myEnd.getY();
         chooseLineStyle(pen);
         pen.drawLine(xStart, yStart, xEnd, yEnd);
     }
@@ -48,12 +48,16 @@ public class Spring implements Drawable {
         // apply hooke's law to each attached mass
         double dx = getXLengthComponent();
         double dy = getYLengthComponent();
-        Force f =
-                new Force(Force.angleBetween(dx, dy), myK *
-                                                      (myLength - Force.distanceBetween(dx, dy)));
-        myStart.applyForce(f);
-        f.negate();
-        myEnd.applyForce(f);
+        double distance = Force.distanceBetween(dx, dy);
+        double magnitude = myK * (myLength - distance);
+        double fx = magnitude;
+        double fy = 0;
+        if (distance > 0) {
+            fx = magnitude * dx / distance;
+            fy = magnitude * dy / distance;
+        }
+        myStart.applyForce(fx, fy);
+        myEnd.applyForce(-fx, -fy);
     }
 
     @Override
@@ -66,6 +70,20 @@ public class Spring implements Drawable {
         return "string";
     }
 
+    /**
+     * gets mass on spring's start
+     */
+    public Mass getStart () {
+        return myStart;
+    }
+
+    /**
+     * gets mass on spring's end
+     */
+    public Mass getEnd () {
+        return myEnd;
+    }
+
     /**
      * forces spring's length to its natural length
      */
@@ -83,18 +101,32 @@ public class Spring implements Drawable {
         }
     }
 
+    /**
+     * gets spring's natural length
+     */
+    public double getLength () {
+        return myLength;
+    }
+
+    /**
+     * gets spring's k value
+     */
+    public double getK () {
+        return myK;
+    }
+
     /**
      * gets spring's horizontal length
      */
     public double getXLengthComponent () {
-        return myStart.getCenter().getX() - myEnd.getCenter().getX();
+        return myStart.getX() - myEnd.getX();
     }
 
     /**
      * gets spring's vertical length
      */
     public double getYLengthComponent () {
-        return myStart.getCenter().getY() - myEnd.getCenter().getY();
+        return myStart.getY() - myEnd.getY();
     }
 
     /**
@@ -120,12 +152,30 @@ public class Spring implements Drawable {
      * @param pen used to draw spring
      */
     public void chooseLineStyle (Graphics2D pen) {
-        double len = getDistanceBetweenEnds() - myLength;
-        if (len < 0.0) {
-            pen.setColor(Color.BLUE);
+        pen.setColor(getLineColor());
+    }
+
+    /**
+     * gets color of spring's line, which shows whether it is compressed
+     */
+    public Color getLineColor () {
+        if (isShorterThan(myLength)) {
+            return Color.BLUE;
         }
         else {
-            pen.setColor(Color.RED);
+            return Color.RED;
         }
     }
+
+    /**
+     * returns true if the ends are closer together than the given length,
+     * without taking a square root
+     * 
+     * @param length length to compare to
+     */
+    protected boolean isShorterThan (double length) {
+        double dx = getXLengthComponent();
+        double dy = getYLengthComponent();
+        return length > 0 && dx * dx + dy * dy < length * length;
+    }
 }
@@ -2,6 +2,7 @@ package mechanics;
 
 import drawings.Drawable;
 import drawings.Mass;
+import drawings.Spring;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.util.ArrayList;
@@ -15,7 +16,36 @@ import java.util.List;
  */
 public class Assembly {
     private List<Drawable> myDrawings;
+    private MassStore myMasses;
+    private IdIndex myIndex;
     private Simulation mySimulation;
+    // batches for updating on several threads, rebuilt after drawables change
+    private SpringColoring myColoring;
+    // bars and muscles gathered for solving together, rebuilt likewise
+    private ConstraintSolver mySolver;
+    // index of mass positions, rebuilt when asked for after masses moved
+    private MassGrid myGrid;
+    private boolean myGridIsCurrent;
+    // largest k * (1 / m1 + 1 / m2) over the springs, or negative if stale
+    private double myStiffness = -1;
+    // number of muscles, or negative if stale
+    private int myMuscleCount = -1;
+    // set while the simulation skips this assembly; see SleepPolicy
+    private boolean myIsAsleep;
+    // steps in a row this assembly has rested
+    private int myRestingSteps;
+    // part of a whole step's impulses applied by the current substep
+    private double myImpulseScale = 1;
+    // working arrays for integrators, at least as long as myMasses
+    private double[][] myScratch = new double[0][];
+    // center of mass as of the start of the current step
+    private double myXCenter;
+    private double myYCenter;
+    private double myTotalMass;
+    // timing of updateMovers, in nanoseconds
+    private long myLastStepTime;
+    private long myTotalStepTime;
+    private long myStepCount;
 
     /**
      * constructs an Assembly object
@@ -24,6 +54,8 @@ public class Assembly {
      */
     public Assembly (Simulation sim) {
         myDrawings = new ArrayList<Drawable>();
+        myMasses = new MassStore();
+        myIndex = new IdIndex();
         mySimulation = sim;
     }
 
@@ -34,6 +66,57 @@ public class Assembly {
      */
     public void add (Drawable drawing) {
         myDrawings.add(drawing);
+        myColoring = null;
+        mySolver = null;
+        myGridIsCurrent = false;
+        myStiffness = -1;
+        myMuscleCount = -1;
+        wake();
+        if ("mass".equals(drawing.getClassName())) {
+            Mass mass = (Mass) drawing;
+            if (!mass.isStoredIn(myMasses)) {
+                mass.moveTo(myMasses);
+            }
+            // first mass added with an id keeps it, as with a linear search
+            if (myIndex.get(mass.getID()) == null) {
+                myIndex.put(mass.getID(), mass);
+            }
+        }
+    }
+
+    /**
+     * removes a Drawable object from the assembly
+     * 
+     * @param drawing used to exclude Drawable object
+     */
+    public void remove (Drawable drawing) {
+        if (!myDrawings.remove(drawing)) {
+            return;
+        }
+        myColoring = null;
+        mySolver = null;
+        myGridIsCurrent = false;
+        myStiffness = -1;
+        myMuscleCount = -1;
+        wake();
+        if ("mass".equals(drawing.getClassName())) {
+            Mass mass = (Mass) drawing;
+            mass.moveTo(new MassStore(1));
+            if (myIndex.get(mass.getID()) == mass) {
+                myIndex.remove(mass.getID());
+                reindex(mass.getID());
+            }
+        }
+    }
+
+    // gives id to the next mass in the list that has it, if any
+    private void reindex (int id) {
+        for (Drawable d : myDrawings) {
+            if ("mass".equals(d.getClassName()) && d.match(id)) {
+                myIndex.put(id, d);
+                return;
+            }
+        }
     }
 
     /**
@@ -53,23 +136,304 @@ public class Assembly {
      * @param dt determines elapsed time
      */
     public void updateMovers (double dt) {
-        for (Drawable d : myDrawings) {
-            d.update(mySimulation, this, dt);
+        long start = System.nanoTime();
+        updateCenterOfMass();
+        Integrator integrator = mySimulation.getIntegrator();
+        int substeps = mySimulation.getSubsteps(this, dt);
+        myImpulseScale = 1.0 / substeps;
+        for (int k = 0; k < substeps; k++) {
+            integrator.step(mySimulation, this, dt / substeps);
+        }
+        myImpulseScale = 1;
+        checkRest();
+        recordStepTime(start);
+    }
+
+    /**
+     * updates all Drawable objects in the assembly on several threads. Springs
+     * are applied first, then masses move, then bars and muscles are enforced;
+     * see SpringColoring.
+     * 
+     * @param dt determines elapsed time
+     * @param workers threads to update on
+     */
+    void updateMovers (double dt, StepWorkers workers) {
+        if (!(mySimulation.getIntegrator() instanceof SemiImplicitEuler)) {
+            // other integrators do not follow the coloring's update order
+            updateMovers(dt);
+            return;
+        }
+        long start = System.nanoTime();
+        if (myColoring == null) {
+            myColoring = new SpringColoring(myDrawings, myMasses);
+        }
+        updateCenterOfMass();
+        int substeps = mySimulation.getSubsteps(this, dt);
+        myImpulseScale = 1.0 / substeps;
+        for (int k = 0; k < substeps; k++) {
+            myColoring.update(mySimulation, this, dt / substeps, workers);
+        }
+        myImpulseScale = 1;
+        checkRest();
+        recordStepTime(start);
+    }
+
+    /**
+     * clears the force on every mass, then adds the forces of all springs
+     * and of the environment
+     * 
+     * @param dt elapsed time of the current substep
+     */
+    public void gatherForces (double dt) {
+        for (int k = 0; k < myMasses.size(); k++) {
+            myMasses.clearForce(k);
         }
+        Metrics metrics = mySimulation.getMetrics();
+        long start = Metrics.startPhase(metrics);
+        for (int k = 0; k < myDrawings.size(); k++) {
+            Drawable d = myDrawings.get(k);
+            if ("string".equals(d.getClassName())) {
+                d.update(mySimulation, this, dt);
+            }
+        }
+        Metrics.endPhase(metrics, Metrics.SPRINGS, start);
+        start = Metrics.startPhase(metrics);
+        Environment environment = mySimulation.getEnvironment();
+        for (int k = 0; k < myMasses.size(); k++) {
+            environment.applyForces(myMasses.getView(k), this);
+        }
+        Metrics.endPhase(metrics, Metrics.FORCES, start);
+    }
+
+    /**
+     * bounces every mass off the walls, then enforces bars and muscles in
+     * the order they were added
+     * 
+     * @param dt elapsed time of the current substep
+     */
+    public void applyConstraints (double dt) {
+        for (int k = 0; k < myMasses.size(); k++) {
+            myMasses.getView(k).bounce(mySimulation);
+        }
+        if (mySimulation.getConstraintIterations() > 0) {
+            solveConstraints(dt);
+            return;
+        }
+        Metrics metrics = mySimulation.getMetrics();
+        long start = Metrics.startPhase(metrics);
+        for (int k = 0; k < myDrawings.size(); k++) {
+            Drawable d = myDrawings.get(k);
+            if ("bar".equals(d.getClassName()) || "muscle".equals(d.getClassName())) {
+                d.update(mySimulation, this, dt);
+            }
+        }
+        Metrics.endPhase(metrics, Metrics.CONSTRAINTS, start);
+    }
+
+    /**
+     * advances muscles, then enforces all bars and muscles together with
+     * the simulation's constraint iterations; see ConstraintSolver
+     * 
+     * @param dt elapsed time of the current substep
+     */
+    public void solveConstraints (double dt) {
+        if (mySolver == null) {
+            mySolver = new ConstraintSolver(myDrawings, myMasses);
+        }
+        Metrics metrics = mySimulation.getMetrics();
+        long start = Metrics.startPhase(metrics);
+        mySolver.solve(this, dt, mySimulation.getConstraintIterations(),
+                       mySimulation.isJacobiConstraints());
+        Metrics.endPhase(metrics, Metrics.CONSTRAINTS, start);
+    }
+
+    /**
+     * gets part of a whole step's impulses that the current substep applies
+     */
+    public double getImpulseScale () {
+        return myImpulseScale;
+    }
+
+    /**
+     * gets largest k * (1 / m1 + 1 / m2) over the springs between masses of
+     * this assembly, with fixed masses counting as infinitely heavy; its
+     * square root is the fastest angular frequency of the assembly
+     */
+    public double getStiffness () {
+        if (myStiffness < 0) {
+            myStiffness = 0;
+            for (Drawable d : myDrawings) {
+                if ("string".equals(d.getClassName())) {
+                    Spring s = (Spring) d;
+                    double inverseMass = getInverseMass(s.getStart()) +
+                                         getInverseMass(s.getEnd());
+                    myStiffness = Math.max(myStiffness, s.getK() * inverseMass);
+                }
+            }
+        }
+        return myStiffness;
+    }
+
+    private double getInverseMass (Mass mass) {
+        return mass.isFixed() ? 0 : 1 / mass.getMass();
+    }
+
+    /**
+     * returns true if the simulation skips this assembly until it is woken
+     */
+    public boolean isAsleep () {
+        return myIsAsleep;
+    }
+
+    /**
+     * makes the simulation step this assembly again, and start counting
+     * the steps it rests over
+     */
+    public void wake () {
+        myIsAsleep = false;
+        myRestingSteps = 0;
+    }
+
+    // puts this assembly to sleep once it has rested as long as the
+    // simulation's sleep policy asks
+    private void checkRest () {
+        SleepPolicy policy = mySimulation.getSleepPolicy();
+        if (policy == null) {
+            return;
+        }
+        if (!isResting(policy)) {
+            myRestingSteps = 0;
+        }
+        else if (++myRestingSteps >= policy.getSteps()) {
+            for (int k = 0; k < myMasses.size(); k++) {
+                myMasses.setVelocity(k, 0, 0);
+            }
+            myIsAsleep = true;
+        }
+    }
+
+    // springs are only measured once all masses are slow enough
+    private boolean isResting (SleepPolicy policy) {
+        if (getMuscleCount() > 0) {
+            return false;
+        }
+        double maxSpeedSquared = policy.getMaxSpeed() * policy.getMaxSpeed();
+        for (int k = 0; k < myMasses.size(); k++) {
+            double xVelocity = myMasses.getXVelocity(k);
+            double yVelocity = myMasses.getYVelocity(k);
+            if (xVelocity * xVelocity + yVelocity * yVelocity > maxSpeedSquared) {
+                return false;
+            }
+        }
+        for (int k = 0; k < myDrawings.size(); k++) {
+            Drawable d = myDrawings.get(k);
+            if ("string".equals(d.getClassName())) {
+                Spring s = (Spring) d;
+                double length = Math.hypot(s.getStart().getX() - s.getEnd().getX(),
+                                           s.getStart().getY() - s.getEnd().getY());
+                if (Math.abs(length - s.getLength()) > policy.getMaxStrain() * s.getLength()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int getMuscleCount () {
+        if (myMuscleCount < 0) {
+            myMuscleCount = 0;
+            for (Drawable d : myDrawings) {
+                if ("muscle".equals(d.getClassName())) {
+                    myMuscleCount++;
+                }
+            }
+        }
+        return myMuscleCount;
+    }
+
+    // returns count arrays at least as long as the number of masses
+    double[][] getScratch (int count) {
+        if (myScratch.length < count || myScratch[0].length < myMasses.size()) {
+            myScratch = new double[count][myMasses.size()];
+        }
+        return myScratch;
+    }
+
+    private void recordStepTime (long start) {
+        myGridIsCurrent = false;
+        myLastStepTime = System.nanoTime() - start;
+        myTotalStepTime += myLastStepTime;
+        myStepCount++;
+    }
+
+    /**
+     * gets time taken by the last updateMovers call, in nanoseconds
+     */
+    public long getLastStepTime () {
+        return myLastStepTime;
+    }
+
+    /**
+     * gets time taken by all updateMovers calls so far, in nanoseconds
+     */
+    public long getTotalStepTime () {
+        return myTotalStepTime;
+    }
+
+    /**
+     * gets number of updateMovers calls so far
+     */
+    public long getStepCount () {
+        return myStepCount;
+    }
+
+    /**
+     * recomputes the center of mass from the current mass positions
+     */
+    public void updateCenterOfMass () {
+        double xCenter = 0;
+        double yCenter = 0;
+        double totalMass = 0;
+        for (int k = 0; k < myMasses.size(); k++) {
+            double mass = myMasses.getMass(k);
+            xCenter += mass * myMasses.getX(k);
+            yCenter += mass * myMasses.getY(k);
+            totalMass += mass;
+        }
+        myXCenter = xCenter / totalMass;
+        myYCenter = yCenter / totalMass;
+        myTotalMass = totalMass;
+    }
+
+    /**
+     * gets x coordinate of the center of mass as of the start of the step
+     */
+    public double getXCenterOfMass () {
+        return myXCenter;
+    }
+
+    /**
+     * gets y coordinate of the center of mass as of the start of the step
+     */
+    public double getYCenterOfMass () {
+        return myYCenter;
+    }
+
+    /**
+     * gets total mass of the assembly
+     */
+    public double getTotalMass () {
+        return myTotalMass;
     }
 
     /**
      * gets a Drawable object in the assembly
      * 
      * @param id used to determine which Drawable object to select
+     * @return Drawable with given id, or null if there is none
      */
     public Drawable getDrawable (int id) {
-        for (Drawable d : myDrawings) {
-            if (d.match(id)) {
-                return d;
-            }
-        }
-        return null;
+        return myIndex.get(id);
     }
 
     /**
@@ -79,25 +443,38 @@ public class Assembly {
         return myDrawings;
     }
 
+    /**
+     * gets the packed storage of the assembly's masses
+     */
+    public MassStore getMasses () {
+        return myMasses;
+    }
+
+    /**
+     * gets the spatial index of the assembly's masses, up to date with their
+     * current positions
+     */
+    public MassGrid getGrid () {
+        if (myGrid == null) {
+            myGrid = new MassGrid(myMasses);
+        }
+        else if (!myGridIsCurrent) {
+            myGrid.rebuild();
+        }
+        myGridIsCurrent = true;
+        return myGrid;
+    }
+
     /**
      * gets the nearest mass in the assembly to a point
      * 
      * @param point used to determine the nearest distance
+     * @return nearest mass, or null if no mass is within the simulation's size
      */
     public Mass getNearestMass (Point point) {
-        Mass nearestMass = null;
         double minDistance =
                 Math.max(mySimulation.getSize().getHeight(), mySimulation.getSize().getWidth());
-        for (Drawable d : myDrawings) {
-            if ("mass".equals(d.getClassName())) {
-                double distance = Force.distanceBetween(point, ((Mass) d).getCenter());
-                if (distance < minDistance) {
-                    nearestMass = (Mass) d;
-                    minDistance = distance;
-                }
-            }
-        }
-        return nearestMass;
+        return getGrid().getNearest(point.getX(), point.getY(), minDistance);
     }
 
 }
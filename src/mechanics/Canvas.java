@@ -4,20 +4,23 @@ import drawings.Bar;
 import drawings.Mass;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
-import javax.swing.Timer;
 
 /**
  * Creates an component that is a viewer onto an animation.
@@ -67,6 +70,10 @@ public class Canvas extends JComponent {
      */
     public static final int RIGHT_ANGLE = 0;
 
+    // look of the metrics overlay
+    private static final Color OVERLAY_BACKGROUND = new Color(255, 255, 255, 200);
+    private static final int OVERLAY_MARGIN = 4;
+
     // mouse dragging information
     private Assembly myNearestAssembly;
     private Mass myMouseMass;
@@ -77,9 +84,16 @@ public class Canvas extends JComponent {
 
     // user's game to be animated
     private Simulation myTarget;
-    private Factory myFactory;
-    // drives simulation
-    private Timer myTimer;
+    private ModelLoader myLoader;
+    private EnvironmentWatcher myEnvironmentWatcher;
+    // drives simulation; everything that touches myTarget runs on it
+    private SimulationThread mySimulationThread;
+    // keeps the picture between frames so only what changed is drawn
+    private FramePainter myPainter = new FramePainter();
+    // where time goes, shown over the simulation when asked for
+    private Metrics myMetrics;
+    // read on the simulation thread to decide whether metrics need repainting
+    private volatile boolean myShowsMetrics;
     // input state
     private int myLastKeyPressed;
     private Point myLastMousePosition;
@@ -99,23 +113,79 @@ public class Canvas extends JComponent {
         setInputListeners();
         setFocusable(true);
         requestFocus();
-        // create timer to drive the animation
-        myTimer = new Timer(ONE_SECOND / FRAMES_PER_SECOND, new ActionListener() {
+        // initialize simulation and the thread that drives the animation
+        myTarget = new Simulation(this);
+        myMetrics = new Metrics(TimeUnit.MILLISECONDS.toNanos(ONE_SECOND / FRAMES_PER_SECOND));
+        myTarget.setMetrics(myMetrics);
+        myMetrics.setListener(new Runnable() {
             @Override
-            public void actionPerformed (ActionEvent e) {
-                step((double) FRAMES_PER_SECOND / ONE_SECOND);
+            public void run () {
+                // a scene at rest publishes no frames, but its metrics still change
+                if (myShowsMetrics) {
+                    repaint();
+                }
+            }
+        });
+        // creatures loaded side by side should bump into each other
+        myTarget.setMassCollisions(true);
+        // most scenes come to rest and should then cost next to nothing
+        myTarget.setSleepPolicy(new SleepPolicy());
+        mySimulationThread =
+                new SimulationThread(myTarget, (double) FRAMES_PER_SECOND / ONE_SECOND,
+                                     TimeUnit.MILLISECONDS.toNanos(ONE_SECOND /
+                                                                   FRAMES_PER_SECOND),
+                                     new Runnable() {
+                                         @Override
+                                         public void run () {
+                                             // indirectly causes paint to be called
+                                             repaint();
+                                         }
+                                     });
+        mySimulationThread.setLevelOfDetail(new LevelOfDetail());
+        myLoader = new ModelLoader(myTarget, mySimulationThread, new Runnable() {
+            @Override
+            public void run () {
+                // shows progress even while the simulation is paused
+                repaint();
             }
         });
-        // initialize simulation
-        myTarget = new Simulation(this);
         loadModel();
     }
 
+    /**
+     * Shows the metrics of this canvas over JMX while it is on screen.
+     */
+    @Override
+    public void addNotify () {
+        super.addNotify();
+        try {
+            myMetrics.register();
+        }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops showing the metrics of this canvas over JMX once it is taken
+     * off screen.
+     */
+    @Override
+    public void removeNotify () {
+        try {
+            myMetrics.unregister();
+        }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+        super.removeNotify();
+    }
+
     /**
      * Starts the applet's action, i.e., starts the animation.
      */
     public void start () {
-        myTimer.start();
+        mySimulationThread.start();
     }
 
     /**
@@ -123,17 +193,20 @@ public class Canvas extends JComponent {
      * 
      * @param elapsedTime used for updating Simulation object's time
      */
-    public void step (double elapsedTime) {
-        myTarget.update(elapsedTime);
-        // indirectly causes paint to be called
-        repaint();
+    public void step (final double elapsedTime) {
+        mySimulationThread.post(new Runnable() {
+            @Override
+            public void run () {
+                myTarget.update(elapsedTime);
+            }
+        });
     }
 
     /**
      * Stops the applet's action, i.e., the animation.
      */
     public void stop () {
-        myTimer.stop();
+        mySimulationThread.stop();
     }
 
     /**
@@ -163,9 +236,58 @@ public class Canvas extends JComponent {
      */
     @Override
     public void paintComponent (Graphics pen) {
-        pen.setColor(Color.WHITE);
-        pen.fillRect(0, 0, getSize().width, getSize().height);
-        myTarget.paint((Graphics2D) pen);
+        long start = System.nanoTime();
+        myPainter.paint((Graphics2D) pen, mySimulationThread.getLatestFrame(), getWidth(),
+                        getHeight());
+        myMetrics.record(Metrics.PAINT, System.nanoTime() - start);
+        if (myShowsMetrics) {
+            paintMetrics(pen);
+        }
+        paintLoadings(pen);
+    }
+
+    // shows the metrics summary in the top left corner, in red while steps
+    // often take longer than they may
+    private void paintMetrics (Graphics pen) {
+        boolean isOverBudget =
+                myMetrics.getP99Millis()[Metrics.STEP] > myMetrics.getBudgetMillis();
+        paintOverlay(pen, myMetrics.getSummary(), false, isOverBudget ? Color.RED : Color.BLACK);
+    }
+
+    // shows files being loaded, and why a watched environment could not be reloaded
+    private void paintLoadings (Graphics pen) {
+        List<String> lines = new ArrayList<String>();
+        for (ModelLoader.Loading loading : myLoader.getLoadings()) {
+            lines.add(String.format("loading %s %.0f%% (Esc cancels)",
+                                    loading.getFile().getName(), 100 * loading.getProgress()));
+        }
+        EnvironmentWatcher watcher = myEnvironmentWatcher;
+        if (watcher != null && watcher.getError() != null) {
+            lines.add(String.format("%s not reloaded: %s", watcher.getFile().getName(),
+                                    watcher.getError().getMessage()));
+        }
+        if (!lines.isEmpty()) {
+            paintOverlay(pen, lines, true, Color.BLACK);
+        }
+    }
+
+    // draws lines on a pale box in the top or bottom left corner
+    private void paintOverlay (Graphics pen, List<String> lines, boolean isAtBottom,
+                               Color color) {
+        FontMetrics font = pen.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, font.stringWidth(line));
+        }
+        int height = lines.size() * font.getHeight() + 2 * OVERLAY_MARGIN;
+        int top = isAtBottom ? getHeight() - height : 0;
+        pen.setColor(OVERLAY_BACKGROUND);
+        pen.fillRect(0, top, width + 2 * OVERLAY_MARGIN, height);
+        pen.setColor(color);
+        for (int k = 0; k < lines.size(); k++) {
+            pen.drawString(lines.get(k), OVERLAY_MARGIN,
+                           top + OVERLAY_MARGIN + font.getAscent() + k * font.getHeight());
+        }
     }
 
     /**
@@ -190,7 +312,13 @@ public class Canvas extends JComponent {
             @Override
             public void mouseReleased (MouseEvent e) {
                 myLastMousePosition = e.getPoint();
-                manageMouseReleased(myLastMousePosition);
+                final Point point = myLastMousePosition;
+                mySimulationThread.post(new Runnable() {
+                    @Override
+                    public void run () {
+                        manageMouseReleased(point);
+                    }
+                });
             }
         });
         addMouseMotionListener(new MouseMotionAdapter() {
@@ -198,28 +326,59 @@ public class Canvas extends JComponent {
             @Override
             public void mouseDragged (MouseEvent e) {
                 myLastMousePosition = e.getPoint();
-                manageMouseDragged(myLastMousePosition);
+                final Point point = myLastMousePosition;
+                mySimulationThread.post(new Runnable() {
+                    @Override
+                    public void run () {
+                        manageMouseDragged(point);
+                    }
+                });
             }
         });
     }
 
     private void loadModel () {
-        myFactory = new Factory();
-        readInput(myFactory, "chooseAssembly");
-        readInput(myFactory, "chooseEnvironment");
+        readInput("chooseAssembly");
+        readInput("chooseEnvironment");
     }
 
-    private void readInput (final Factory factory, String prompt) {
+    // parsing happens in the background, so neither painting nor stepping waits for it
+    private void readInput (String prompt) {
         int response = ourChooser.showDialog(this, prompt);
         if (response == JFileChooser.APPROVE_OPTION) {
-            factory.loadModel(myTarget, ourChooser.getSelectedFile());
+            File file = ourChooser.getSelectedFile();
+            myLoader.load(file);
+            if ("environment.xsp".equals(file.getName())) {
+                watchEnvironment(file);
+            }
         }
     }
 
-    private void manageSimulation (int keyCode) {
+    // reloads the environment whenever its file is saved
+    private void watchEnvironment (File file) {
+        if (myEnvironmentWatcher != null) {
+            myEnvironmentWatcher.stop();
+        }
+        myEnvironmentWatcher =
+                new EnvironmentWatcher(file, myTarget, mySimulationThread, new Runnable() {
+                    @Override
+                    public void run () {
+                        // shows or clears why the file could not be reloaded
+                        repaint();
+                    }
+                });
+        try {
+            myEnvironmentWatcher.start();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void manageSimulation (final int keyCode) {
         switch (keyCode) {
             case KeyEvent.VK_SPACE:
-                if (myTimer.isRunning()) {
+                if (mySimulationThread.isRunning()) {
                     stop();
                 }
                 else {
@@ -229,12 +388,33 @@ public class Canvas extends JComponent {
             case KeyEvent.VK_S:
                 step((double) FRAMES_PER_SECOND / ONE_SECOND);
                 break;
+            case KeyEvent.VK_N:
+                readInput("Read additional assembly.");
+                break;
+            case KeyEvent.VK_ESCAPE:
+                myLoader.cancelAll();
+                break;
+            case KeyEvent.VK_I:
+                myShowsMetrics = !myShowsMetrics;
+                repaint();
+                break;
+            default:
+                mySimulationThread.post(new Runnable() {
+                    @Override
+                    public void run () {
+                        changeSimulation(keyCode);
+                    }
+                });
+                break;
+        }
+    }
+
+    // runs on the simulation thread
+    private void changeSimulation (int keyCode) {
+        switch (keyCode) {
             case KeyEvent.VK_P:
                 System.out.println(myTarget);
                 break;
-            case KeyEvent.VK_N:
-                readInput(myFactory, "Read additional assembly.");
-                break;
             case KeyEvent.VK_C:
                 myTarget.clearAssemblies();
                 break;
@@ -259,21 +439,29 @@ public class Canvas extends JComponent {
         }
     }
 
+    // runs on the simulation thread
     private void manageMouseDragged (Point point) {
         if (myMouseMass != null) {
             myMouseMass.setCenter(point.getX(), point.getY());
+            myNearestAssembly.wake();
         }
         else {
             createMouseDragger(point);
         }
     }
 
+    // runs on the simulation thread
     private void createMouseDragger (Point point) {
         List<Assembly> myAssemblies = myTarget.getMyAssemblies();
         Mass nearestMass = null;
-        double minDistance = Math.max(getSize().getHeight(), getSize().getWidth());
+        // size cached for the step, as Swing may only be read on the event thread
+        Dimension size = myTarget.getSize();
+        double minDistance = Math.max(size.getHeight(), size.getWidth());
         for (Assembly a : myAssemblies) {
             Mass localNearestMass = a.getNearestMass(point);
+            if (localNearestMass == null) {
+                continue;
+            }
             double localMinDistance = point.distance(localNearestMass.getCenter());
             if (localMinDistance <= minDistance) {
                 nearestMass = localNearestMass;
@@ -281,6 +469,9 @@ public class Canvas extends JComponent {
                 minDistance = localMinDistance;
             }
         }
+        if (nearestMass == null) {
+            return;
+        }
         myMouseMass =
                 new Mass(myMouseMassDefaultID, point.getX(), point.getY(), myMouseMassDefaultMass);
         myMouseBar = new Bar(myMouseMass, nearestMass, minDistance, myMouseBarDefaultKVal);
@@ -288,9 +479,13 @@ public class Canvas extends JComponent {
         myNearestAssembly.add(myMouseBar);
     }
 
+    // runs on the simulation thread
     private void manageMouseReleased (Point point) {
-        myNearestAssembly.getMyDrawings().remove(myMouseMass);
-        myNearestAssembly.getMyDrawings().remove(myMouseBar);
+        if (myMouseMass == null) {
+            return;
+        }
+        myNearestAssembly.remove(myMouseMass);
+        myNearestAssembly.remove(myMouseBar);
         myMouseMass = null;
         myMouseBar = null;
     }
@@ -1,10 +1,6 @@
 package mechanics;
 
-import drawings.Drawable;
-import drawings.Mass;
-import java.awt.event.KeyEvent;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.IOException;
 
 /**
  * Handles center mass force.
@@ -12,45 +8,21 @@ import java.util.Scanner;
  * @author Jei Min Yoo, Volodymyr Zavidovych
  *
  */
-public class CenterMassForce extends Force {
-
-    private static double ourCenterMassMagnitude = 0;
-    private static double ourCenterMassExponent = 0;
-    private int myKeyCode = KeyEvent.VK_M;
-    /**
-     * @param mass mass to apply force to
-     * @param assembly assembly of the mass
-     * @param forces information about environment's forces
-     */
-    public CenterMassForce (Mass mass, Assembly assembly, HashMap<Integer, Force> forces) {
-        boolean forceToggle = forces.get(myKeyCode).getToggle();
-        double xCenter = 0;
-        double yCenter = 0;
-        double totalMass = 0;
-        for (Drawable d : assembly.getMyDrawings()) {
-            if ("mass".equals(d.getClassName())) {
-                xCenter += ((Mass) d).getMass() * ((Mass) d).getCenter().getX();
-                yCenter += ((Mass) d).getMass() * ((Mass) d).getCenter().getY();
-                totalMass += ((Mass) d).getMass();
-            }
-        }
-        double dx = xCenter / totalMass - mass.getCenter().getX();
-        double dy = yCenter / totalMass - mass.getCenter().getY();
-        double angle = Force.angleBetween(dx, dy);
-        double distance = Force.distanceBetween(dx, dy) / Canvas.FORCE_DISTANCE_DIVIDER;
-        double magnitude = ourCenterMassMagnitude / Math.pow(distance, ourCenterMassExponent);
-        setDirection(angle);
-        setMagnitude(magnitude);
-        setToggle(forceToggle);
+public final class CenterMassForce {
+    private CenterMassForce () {
+        // does not make sense to construct this class
     }
 
     /**
      * Processes line that came from factory
      * 
      * @param line line of input
+     * @param environment environment to set center mass force of
      */
-    public static void readInputLine(Scanner line) {
-        ourCenterMassMagnitude = line.nextDouble();
-        ourCenterMassExponent = line.nextDouble();
+    public static void readInputLine (XspReader line, Environment environment)
+        throws IOException {
+        double magnitude = line.nextDouble();
+        double exponent = line.nextDouble();
+        environment.setCenterMass(magnitude, exponent);
     }
 }
@@ -0,0 +1,295 @@
+package mechanics;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Keeps masses of different assemblies from passing through each other.
+ * Each mass is a disc as wide as it is drawn. Only masses inside the box
+ * around some other assembly can touch it, so only those are put into a
+ * uniform grid of cells at least one mass wide, and each is compared with
+ * the masses in its own and the eight cells around it. Cost grows with the
+ * number of masses near other assemblies, not with the square of all.
+ *
+ * Touching masses are pushed apart along the line between them, split by
+ * inverse mass so fixed masses never move, and lose the part of their
+ * closing speed that restitution does not give back. Two sleeping
+ * assemblies are left where they lie; a sleeping assembly touched by an
+ * awake one wakes up.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ *
+ */
+class CollisionDetector {
+    private static final double RESTITUTION = 0.5;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // left, top, right and bottom of the discs of each assembly
+    private double[] myBounds = new double[0];
+    private MassStore[] myStores = new MassStore[0];
+    // assemblies of the last call, to see which sleep
+    private List<Assembly> myAssemblyList;
+    // masses that may touch another assembly
+    private int myCount;
+    private int[] myAssemblies = new int[INITIAL_CAPACITY];
+    private int[] mySlots = new int[INITIAL_CAPACITY];
+    private double[] myRadii = new double[INITIAL_CAPACITY];
+    // grid over those masses, built like MassGrid's
+    private double myCellSize;
+    private double myLeft;
+    private double myTop;
+    private int myColumns;
+    private int myRows;
+    private int[] myCells = new int[INITIAL_CAPACITY];
+    private int[] myCellStarts = new int[1];
+    private int[] myCellEnds = new int[0];
+    private int[] myCellItems = new int[INITIAL_CAPACITY];
+    private int myContacts;
+
+    /**
+     * Separates every pair of touching masses that belong to different
+     * assemblies.
+     *
+     * @param assemblies all assemblies of the simulation
+     */
+    public void collide (List<Assembly> assemblies) {
+        myContacts = 0;
+        if (assemblies.size() < 2 || isAllAsleep(assemblies)) {
+            return;
+        }
+        myAssemblyList = assemblies;
+        measure(assemblies);
+        collectCandidates(assemblies.size());
+        if (myCount < 2) {
+            return;
+        }
+        buildGrid();
+        for (int k = 0; k < myCount; k++) {
+            collideWithNeighbors(k);
+        }
+    }
+
+    private static boolean isAllAsleep (List<Assembly> assemblies) {
+        for (int a = 0; a < assemblies.size(); a++) {
+            if (!assemblies.get(a).isAsleep()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns number of touching pairs found by the last call to collide.
+     */
+    public int getContactCount () {
+        return myContacts;
+    }
+
+    private void measure (List<Assembly> assemblies) {
+        int count = assemblies.size();
+        if (myStores.length < count) {
+            myStores = new MassStore[count];
+            myBounds = new double[4 * count];
+        }
+        for (int a = 0; a < count; a++) {
+            MassStore store = assemblies.get(a).getMasses();
+            myStores[a] = store;
+            double left = Double.POSITIVE_INFINITY;
+            double top = Double.POSITIVE_INFINITY;
+            double right = Double.NEGATIVE_INFINITY;
+            double bottom = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < store.size(); k++) {
+                double radius = getRadius(store, k);
+                left = Math.min(left, store.getX(k) - radius);
+                top = Math.min(top, store.getY(k) - radius);
+                right = Math.max(right, store.getX(k) + radius);
+                bottom = Math.max(bottom, store.getY(k) + radius);
+            }
+            myBounds[4 * a] = left;
+            myBounds[4 * a + 1] = top;
+            myBounds[4 * a + 2] = right;
+            myBounds[4 * a + 3] = bottom;
+        }
+    }
+
+    // keeps the masses whose disc reaches into the box of another assembly
+    private void collectCandidates (int assemblies) {
+        myCount = 0;
+        for (int a = 0; a < assemblies; a++) {
+            MassStore store = myStores[a];
+            for (int k = 0; k < store.size(); k++) {
+                double radius = getRadius(store, k);
+                double x = store.getX(k);
+                double y = store.getY(k);
+                for (int b = 0; b < assemblies; b++) {
+                    if (b != a && overlaps(b, x - radius, y - radius, x + radius, y + radius)) {
+                        addCandidate(a, k, radius);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean overlaps (int assembly, double left, double top, double right,
+                              double bottom) {
+        int k = 4 * assembly;
+        return left <= myBounds[k + 2] && myBounds[k] <= right && top <= myBounds[k + 3] &&
+               myBounds[k + 1] <= bottom;
+    }
+
+    private void addCandidate (int assembly, int slot, double radius) {
+        if (myCount == mySlots.length) {
+            myAssemblies = Arrays.copyOf(myAssemblies, 2 * myCount);
+            mySlots = Arrays.copyOf(mySlots, 2 * myCount);
+            myRadii = Arrays.copyOf(myRadii, 2 * myCount);
+            myCells = Arrays.copyOf(myCells, 2 * myCount);
+            myCellItems = Arrays.copyOf(myCellItems, 2 * myCount);
+        }
+        myAssemblies[myCount] = assembly;
+        mySlots[myCount] = slot;
+        myRadii[myCount] = radius;
+        myCount++;
+    }
+
+    private void buildGrid () {
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        double maxRadius = 0;
+        for (int k = 0; k < myCount; k++) {
+            left = Math.min(left, getX(k));
+            top = Math.min(top, getY(k));
+            right = Math.max(right, getX(k));
+            bottom = Math.max(bottom, getY(k));
+            maxRadius = Math.max(maxRadius, myRadii[k]);
+        }
+        // cells hold any two touching discs in neighboring cells, and there
+        // are never many more cells than masses
+        double area = Math.max(1, (right - left) * (bottom - top));
+        myCellSize = Math.max(Math.max(2 * maxRadius, 1), Math.sqrt(area / myCount));
+        myLeft = left;
+        myTop = top;
+        myColumns = (int) ((right - left) / myCellSize) + 1;
+        myRows = (int) ((bottom - top) / myCellSize) + 1;
+        int cells = myColumns * myRows;
+        if (myCellStarts.length < cells + 1) {
+            myCellStarts = new int[cells + 1];
+            myCellEnds = new int[cells];
+        }
+        else {
+            Arrays.fill(myCellStarts, 0, cells + 1, 0);
+        }
+        // counting sort of candidates by cell
+        for (int k = 0; k < myCount; k++) {
+            myCells[k] = getRow(getY(k)) * myColumns + getColumn(getX(k));
+            myCellStarts[myCells[k] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            myCellStarts[c + 1] += myCellStarts[c];
+        }
+        System.arraycopy(myCellStarts, 0, myCellEnds, 0, cells);
+        for (int k = 0; k < myCount; k++) {
+            myCellItems[myCellEnds[myCells[k]]++] = k;
+        }
+    }
+
+    // compares a candidate with the later candidates of other assemblies in
+    // the cells around it, so every pair is looked at once
+    private void collideWithNeighbors (int first) {
+        int column = myCells[first] % myColumns;
+        int row = myCells[first] / myColumns;
+        for (int r = Math.max(0, row - 1); r <= row + 1 && r < myRows; r++) {
+            for (int c = Math.max(0, column - 1); c <= column + 1 && c < myColumns; c++) {
+                int cell = r * myColumns + c;
+                for (int i = myCellStarts[cell]; i < myCellStarts[cell + 1]; i++) {
+                    int second = myCellItems[i];
+                    if (second > first && myAssemblies[second] != myAssemblies[first]) {
+                        separate(first, second);
+                    }
+                }
+            }
+        }
+    }
+
+    private void separate (int first, int second) {
+        Assembly firstAssembly = myAssemblyList.get(myAssemblies[first]);
+        Assembly secondAssembly = myAssemblyList.get(myAssemblies[second]);
+        if (firstAssembly.isAsleep() && secondAssembly.isAsleep()) {
+            return;
+        }
+        MassStore firstStore = myStores[myAssemblies[first]];
+        MassStore secondStore = myStores[myAssemblies[second]];
+        int firstSlot = mySlots[first];
+        int secondSlot = mySlots[second];
+        double dx = secondStore.getX(secondSlot) - firstStore.getX(firstSlot);
+        double dy = secondStore.getY(secondSlot) - firstStore.getY(firstSlot);
+        double reach = myRadii[first] + myRadii[second];
+        double distanceSquared = dx * dx + dy * dy;
+        if (distanceSquared >= reach * reach) {
+            return;
+        }
+        double firstWeight = getInverseMass(firstStore, firstSlot);
+        double secondWeight = getInverseMass(secondStore, secondSlot);
+        double totalWeight = firstWeight + secondWeight;
+        if (totalWeight == 0) {
+            return;
+        }
+        myContacts++;
+        firstAssembly.wake();
+        secondAssembly.wake();
+        double distance = Math.sqrt(distanceSquared);
+        // unit vector from first to second; any direction will do if they coincide
+        double nx = (distance == 0) ? 1 : dx / distance;
+        double ny = (distance == 0) ? 0 : dy / distance;
+        double push = (reach - distance) / totalWeight;
+        firstStore.setPosition(firstSlot,
+                               firstStore.getX(firstSlot) - nx * push * firstWeight,
+                               firstStore.getY(firstSlot) - ny * push * firstWeight);
+        secondStore.setPosition(secondSlot,
+                                secondStore.getX(secondSlot) + nx * push * secondWeight,
+                                secondStore.getY(secondSlot) + ny * push * secondWeight);
+        double closing = (secondStore.getXVelocity(secondSlot) -
+                          firstStore.getXVelocity(firstSlot)) * nx +
+                         (secondStore.getYVelocity(secondSlot) -
+                          firstStore.getYVelocity(firstSlot)) * ny;
+        if (closing >= 0) {
+            return;
+        }
+        double impulse = -(1 + RESTITUTION) * closing / totalWeight;
+        firstStore.setVelocity(firstSlot,
+                               firstStore.getXVelocity(firstSlot) - nx * impulse * firstWeight,
+                               firstStore.getYVelocity(firstSlot) - ny * impulse * firstWeight);
+        secondStore.setVelocity(secondSlot,
+                                secondStore.getXVelocity(secondSlot) +
+                                        nx * impulse * secondWeight,
+                                secondStore.getYVelocity(secondSlot) +
+                                        ny * impulse * secondWeight);
+    }
+
+    private double getX (int candidate) {
+        return myStores[myAssemblies[candidate]].getX(mySlots[candidate]);
+    }
+
+    private double getY (int candidate) {
+        return myStores[myAssemblies[candidate]].getY(mySlots[candidate]);
+    }
+
+    private int getColumn (double x) {
+        return Math.min(myColumns - 1, (int) ((x - myLeft) / myCellSize));
+    }
+
+    private int getRow (double y) {
+        return Math.min(myRows - 1, (int) ((y - myTop) / myCellSize));
+    }
+
+    private static double getRadius (MassStore store, int slot) {
+        return store.getView(slot).getSize().width / 2.0;
+    }
+
+    private static double getInverseMass (MassStore store, int slot) {
+        return store.isFixed(slot) ? 0 : 1 / store.getMass(slot);
+    }
+}
@@ -0,0 +1,181 @@
+package mechanics;
+
+import drawings.Drawable;
+import drawings.Muscle;
+import drawings.Spring;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Enforces all bars and muscles of an assembly together, including a bar
+ * the user is dragging with, instead of one at a time as each is updated.
+ * Every iteration moves the ends of each constraint along the line between
+ * them until it has its natural length, splitting the correction by
+ * inverse mass so fixed masses never move. Works on the packed positions
+ * of a MassStore without trigonometry or allocation.
+ *
+ * Gauss-Seidel iterations apply each correction at once, so later
+ * constraints see earlier ones; Jacobi iterations average the corrections
+ * of a sweep and apply them together, which does not depend on the order
+ * constraints were loaded in but needs more iterations.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ *
+ */
+class ConstraintSolver {
+    private MassStore myStore;
+    private int myCount;
+    private Spring[] myConstraints;
+    private int[] myStarts;
+    private int[] myEnds;
+    private double[] myLengths;
+    // muscles change their natural length every step
+    private List<Muscle> myMuscles;
+    // constraints reaching outside the store are enforced the old way
+    private List<Spring> myOthers;
+
+    /**
+     * Collects the constraints among the given drawables.
+     *
+     * @param drawings drawables of the assembly
+     * @param masses packed storage of the assembly's masses
+     */
+    public ConstraintSolver (List<Drawable> drawings, MassStore masses) {
+        myStore = masses;
+        myMuscles = new ArrayList<Muscle>();
+        myOthers = new ArrayList<Spring>();
+        List<Spring> constraints = new ArrayList<Spring>();
+        for (Drawable d : drawings) {
+            if ("muscle".equals(d.getClassName())) {
+                myMuscles.add((Muscle) d);
+            }
+            if ("bar".equals(d.getClassName()) || "muscle".equals(d.getClassName())) {
+                Spring s = (Spring) d;
+                if (s.getStart().isStoredIn(masses) && s.getEnd().isStoredIn(masses)) {
+                    constraints.add(s);
+                }
+                else {
+                    myOthers.add(s);
+                }
+            }
+        }
+        myCount = constraints.size();
+        myConstraints = constraints.toArray(new Spring[myCount]);
+        myStarts = new int[myCount];
+        myEnds = new int[myCount];
+        myLengths = new double[myCount];
+        for (int k = 0; k < myCount; k++) {
+            myStarts[k] = myConstraints[k].getStart().getSlot();
+            myEnds[k] = myConstraints[k].getEnd().getSlot();
+        }
+    }
+
+    /**
+     * Advances muscles by dt, then enforces every constraint.
+     *
+     * @param assembly assembly being stepped
+     * @param dt elapsed time
+     * @param iterations number of passes over all constraints
+     * @param isJacobi true to average each pass's corrections instead of
+     *        applying them one by one
+     */
+    public void solve (Assembly assembly, double dt, int iterations, boolean isJacobi) {
+        for (int k = 0; k < myMuscles.size(); k++) {
+            myMuscles.get(k).advance(dt);
+        }
+        for (int k = 0; k < myCount; k++) {
+            myLengths[k] = myConstraints[k].getLength();
+        }
+        for (int i = 0; i < iterations; i++) {
+            if (isJacobi) {
+                sweepJacobi(assembly);
+            }
+            else {
+                sweepGaussSeidel();
+            }
+        }
+        for (int k = 0; k < myOthers.size(); k++) {
+            myOthers.get(k).forceLengthToNatural();
+        }
+    }
+
+    private void sweepGaussSeidel () {
+        for (int k = 0; k < myCount; k++) {
+            int start = myStarts[k];
+            int end = myEnds[k];
+            double startWeight = getInverseMass(start);
+            double endWeight = getInverseMass(end);
+            double totalWeight = startWeight + endWeight;
+            if (totalWeight == 0) {
+                continue;
+            }
+            double dx = myStore.getX(start) - myStore.getX(end);
+            double dy = myStore.getY(start) - myStore.getY(end);
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double scale = getCorrection(distance, myLengths[k]) / totalWeight;
+            if (distance == 0) {
+                dx = 1;
+            }
+            myStore.setPosition(start, myStore.getX(start) + dx * scale * startWeight,
+                                myStore.getY(start) + dy * scale * startWeight);
+            myStore.setPosition(end, myStore.getX(end) - dx * scale * endWeight,
+                                myStore.getY(end) - dy * scale * endWeight);
+        }
+    }
+
+    private void sweepJacobi (Assembly assembly) {
+        // total x and y correction and number of corrections per slot
+        double[][] scratch = assembly.getScratch(3);
+        double[] xChange = scratch[0];
+        double[] yChange = scratch[1];
+        double[] counts = scratch[2];
+        for (int k = 0; k < myStore.size(); k++) {
+            xChange[k] = 0;
+            yChange[k] = 0;
+            counts[k] = 0;
+        }
+        for (int k = 0; k < myCount; k++) {
+            int start = myStarts[k];
+            int end = myEnds[k];
+            double startWeight = getInverseMass(start);
+            double endWeight = getInverseMass(end);
+            double totalWeight = startWeight + endWeight;
+            if (totalWeight == 0) {
+                continue;
+            }
+            double dx = myStore.getX(start) - myStore.getX(end);
+            double dy = myStore.getY(start) - myStore.getY(end);
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            double scale = getCorrection(distance, myLengths[k]) / totalWeight;
+            if (distance == 0) {
+                dx = 1;
+            }
+            xChange[start] += dx * scale * startWeight;
+            yChange[start] += dy * scale * startWeight;
+            xChange[end] -= dx * scale * endWeight;
+            yChange[end] -= dy * scale * endWeight;
+            counts[start]++;
+            counts[end]++;
+        }
+        for (int k = 0; k < myStore.size(); k++) {
+            if (counts[k] > 0) {
+                myStore.setPosition(k, myStore.getX(k) + xChange[k] / counts[k],
+                                    myStore.getY(k) + yChange[k] / counts[k]);
+            }
+        }
+    }
+
+    // returns how far to move along the unit vector between the ends, times
+    // the distance, so that callers need not divide by a zero distance
+    private double getCorrection (double distance, double length) {
+        if (distance == 0) {
+            return length;
+        }
+        return (length - distance) / distance;
+    }
+
+    private double getInverseMass (int slot) {
+        return myStore.isFixed(slot) ? 0 : 1 / myStore.getMass(slot);
+    }
+}
@@ -1,36 +1,56 @@
 package mechanics;
 
 import drawings.Mass;
+import java.awt.Dimension;
 import java.awt.event.KeyEvent;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.io.IOException;
 
 
 /**
  * Handles environmental forces.
  * 
+ * Each simulation has its own environment, so simulations with different
+ * forces can run side by side. Parameters of the forces are changed only
+ * between steps, by whoever steps the simulation, so a step never sees them
+ * change. Constants that do not depend on a particular mass are computed
+ * once per step by prepare(), after which applyForces() adds the
+ * environment's force to each mass without creating any objects.
+ * 
  * @author Jei Min Yoo, Volodymyr Zavidovych
  *
  */
 public class Environment {
 
-    private Canvas myContainer;
-    private HashMap<Integer, Force> myForces = new HashMap<Integer, Force>();
+    private static final int WALL_COUNT = 4;
+
     private int[] myKeyCodes =
             new int[] {KeyEvent.VK_V, KeyEvent.VK_G, KeyEvent.VK_M, KeyEvent.VK_1, KeyEvent.VK_2,
                        KeyEvent.VK_3, KeyEvent.VK_4};
+    // one bit per key code, set when force is toggled on
+    private int myToggles;
+
+    // parameters of the forces, all off until read from a file
+    private double myViscosity;
+    private double myXGravity;
+    private double myYGravity;
+    private double myCenterMassMagnitude;
+    private double myCenterMassExponent;
+    private double[] myWallMagnitudes = new double[WALL_COUNT];
+    private double[] myWallExponents = new double[WALL_COUNT];
+
+    // per-step constants
+    private boolean myViscosityIsOn;
+    private boolean myGravityIsOn;
+    private boolean myCenterMassIsOn;
+    private boolean[] myWallIsOn = new boolean[WALL_COUNT];
+    private double myWidth;
+    private double myHeight;
+
     /**
-     * Constructs environment
-     * 
-     * @param container used to communicate with Canvas instance
+     * Constructs environment with all forces toggled on
      */
-    public Environment (Canvas container) {
-        myContainer = container;
-        Force blankForce = new Force();
-        for (int keyCode : myKeyCodes) {
-            myForces.put(keyCode, blankForce);
-        }
+    public Environment () {
+        myToggles = (1 << myKeyCodes.length) - 1;
     }
 
     /**
@@ -39,19 +59,197 @@ public class Environment {
      * @param line line read by the factory from the input file
      * @param type type of the input detected by the factory
      */
-    public void add (Scanner line, String type) {
+    public void add (XspReader line, String type) throws IOException {
         if ("gravity".equals(type)) {
-            GravityForce.readInputLine(line);
+            GravityForce.readInputLine(line, this);
         }
         else if ("viscosity".equals(type)) {
-            ViscosityForce.readInputLine(line);
+            ViscosityForce.readInputLine(line, this);
         }
         else if ("centermass".equals(type)) {
-            CenterMassForce.readInputLine(line);
+            CenterMassForce.readInputLine(line, this);
         }
         else if ("wall".equals(type)) {
-            WallForce.readInputLine(line);
+            WallForce.readInputLine(line, this);
+        }
+    }
+
+    /**
+     * Replaces the parameters of all forces with those read from an
+     * environment file, so forces the file leaves out are gone. If the file
+     * cannot be read, the old parameters are kept.
+     * 
+     * @param input reader positioned at the start of an environment file
+     */
+    void reload (XspReader input) throws IOException {
+        Environment loaded = new Environment();
+        while (input.nextLine()) {
+            String type = input.nextKeyword();
+            if (type != null) {
+                loaded.add(input, type);
+            }
+        }
+        copyParameters(loaded);
+    }
+
+    /**
+     * Replaces the parameters of all forces with those of another
+     * environment, leaving which forces are toggled on as it is.
+     * 
+     * @param other environment to copy parameters from
+     */
+    void copyParameters (Environment other) {
+        myViscosity = other.myViscosity;
+        myXGravity = other.myXGravity;
+        myYGravity = other.myYGravity;
+        myCenterMassMagnitude = other.myCenterMassMagnitude;
+        myCenterMassExponent = other.myCenterMassExponent;
+        System.arraycopy(other.myWallMagnitudes, 0, myWallMagnitudes, 0, WALL_COUNT);
+        System.arraycopy(other.myWallExponents, 0, myWallExponents, 0, WALL_COUNT);
+    }
+
+    /**
+     * Returns fraction of velocity that acts against each mass.
+     */
+    public double getViscosity () {
+        return myViscosity;
+    }
+
+    /**
+     * Replaces viscosity.
+     * 
+     * @param viscosity new viscosity
+     */
+    void setViscosity (double viscosity) {
+        myViscosity = viscosity;
+    }
+
+    /**
+     * Returns x component of gravity acceleration.
+     */
+    public double getXGravity () {
+        return myXGravity;
+    }
+
+    /**
+     * Returns y component of gravity acceleration.
+     */
+    public double getYGravity () {
+        return myYGravity;
+    }
+
+    /**
+     * Replaces gravity acceleration, to be scaled by each mass's value.
+     * 
+     * @param xGravity x component
+     * @param yGravity y component
+     */
+    void setGravity (double xGravity, double yGravity) {
+        myXGravity = xGravity;
+        myYGravity = yGravity;
+    }
+
+    /**
+     * Returns magnitude of center mass force.
+     */
+    public double getCenterMassMagnitude () {
+        return myCenterMassMagnitude;
+    }
+
+    /**
+     * Returns exponent of the distance to the center of mass.
+     */
+    public double getCenterMassExponent () {
+        return myCenterMassExponent;
+    }
+
+    /**
+     * Replaces center mass force parameters.
+     * 
+     * @param magnitude new magnitude
+     * @param exponent new exponent
+     */
+    void setCenterMass (double magnitude, double exponent) {
+        myCenterMassMagnitude = magnitude;
+        myCenterMassExponent = exponent;
+    }
+
+    /**
+     * Returns magnitude of the force pushing away from the given wall.
+     * 
+     * @param id id of the wall (1 to 4)
+     */
+    public double getWallMagnitude (int id) {
+        return isWall(id) ? myWallMagnitudes[id - 1] : 0;
+    }
+
+    /**
+     * Returns exponent of the distance to the given wall.
+     * 
+     * @param id id of the wall (1 to 4)
+     */
+    public double getWallExponent (int id) {
+        return isWall(id) ? myWallExponents[id - 1] : 0;
+    }
+
+    /**
+     * Replaces parameters of the given wall; ids of no wall are ignored.
+     * 
+     * @param id id of the wall (1 to 4)
+     * @param magnitude new magnitude
+     * @param exponent new exponent
+     */
+    void setWall (int id, double magnitude, double exponent) {
+        if (isWall(id)) {
+            myWallMagnitudes[id - 1] = magnitude;
+            myWallExponents[id - 1] = exponent;
+        }
+    }
+
+    private static boolean isWall (int id) {
+        return id >= 1 && id <= WALL_COUNT;
+    }
+
+    /**
+     * Returns bitmask of forces toggled on, one bit per key code.
+     */
+    int getToggles () {
+        return myToggles;
+    }
+
+    /**
+     * Sets which forces are toggled on.
+     * 
+     * @param toggles bitmask as returned by getToggles
+     */
+    void setToggles (int toggles) {
+        myToggles = toggles;
+    }
+
+    /**
+     * Computes the constants shared by all masses for the coming step.
+     * 
+     * @param bounds size of the walled area
+     */
+    public void prepare (Dimension bounds) {
+        myViscosityIsOn = isToggledOn(KeyEvent.VK_V);
+        myGravityIsOn = isToggledOn(KeyEvent.VK_G);
+        myCenterMassIsOn = isToggledOn(KeyEvent.VK_M);
+        for (int k = 0; k < WALL_COUNT; k++) {
+            myWallIsOn[k] = isToggledOn(KeyEvent.VK_1 + k);
         }
+        myWidth = bounds.width;
+        myHeight = bounds.height;
+    }
+
+    /**
+     * Adds total force exerted by environment to a given mass
+     * 
+     * @param mass mass to apply force on
+     * @param assembly assembly of the mass
+     */
+    public void applyForces (Mass mass, Assembly assembly) {
+        addForces(mass, assembly, null);
     }
 
     /**
@@ -61,36 +259,60 @@ public class Environment {
      * @param assembly assembly of the mass
      */
     public Force getAllForces (Mass mass, Assembly assembly) {
-        resetAllForces(mass, assembly);
         Force totalEnvironmentForce = new Force();
-        for (Map.Entry<Integer, Force> entry : myForces.entrySet()) {
-            Force thisEnvironmentalForce = entry.getValue();
-            Boolean isToggledOn = thisEnvironmentalForce.getToggle();
-            if (isToggledOn) {
-                totalEnvironmentForce.sum(thisEnvironmentalForce);
-            }
-        }
+        addForces(mass, assembly, totalEnvironmentForce);
         return totalEnvironmentForce;
     }
 
-    private void resetAllForces (Mass mass, Assembly assembly) {
-        clearForces();
-        // set forces
-        myForces.put(KeyEvent.VK_G, new GravityForce(mass, myForces));
-        myForces.put(KeyEvent.VK_V, new ViscosityForce(mass, myForces));
-        myForces.put(KeyEvent.VK_M, new CenterMassForce(mass, assembly, myForces));
-        myForces.put(KeyEvent.VK_1, new WallForce(mass, myForces, KeyEvent.VK_1, myContainer));
-        myForces.put(KeyEvent.VK_2, new WallForce(mass, myForces, KeyEvent.VK_2, myContainer));
-        myForces.put(KeyEvent.VK_3, new WallForce(mass, myForces, KeyEvent.VK_3, myContainer));
-        myForces.put(KeyEvent.VK_4, new WallForce(mass, myForces, KeyEvent.VK_4, myContainer));
-    }
-
-    private void clearForces () {
-        for (int keyCode : myKeyCodes) {
-            Boolean currentForceToggle = myForces.get(keyCode).getToggle();
-            Force blankForce = new Force();
-            blankForce.setToggle(currentForceToggle);
-            myForces.put(keyCode, blankForce);
+    // adds the force to total, or straight to the mass if total is null;
+    // only reads fields, so assemblies may be stepped on several threads
+    private void addForces (Mass mass, Assembly assembly, Force total) {
+        double x = mass.getX();
+        double y = mass.getY();
+        double dx = 0;
+        double dy = 0;
+        if (myViscosityIsOn) {
+            dx -= mass.getXVelocity() * myViscosity;
+            dy -= mass.getYVelocity() * myViscosity;
+        }
+        if (myGravityIsOn) {
+            dx += myXGravity * mass.getMass();
+            dy += myYGravity * mass.getMass();
+        }
+        if (myCenterMassIsOn) {
+            double xDistance = assembly.getXCenterOfMass() - x;
+            double yDistance = assembly.getYCenterOfMass() - y;
+            double length = Force.distanceBetween(xDistance, yDistance);
+            double magnitude =
+                    myCenterMassMagnitude /
+                            Math.pow(length / Canvas.FORCE_DISTANCE_DIVIDER,
+                                     myCenterMassExponent);
+            if (length > 0) {
+                dx += magnitude * xDistance / length;
+                dy += magnitude * yDistance / length;
+            }
+            else {
+                dx += magnitude;
+            }
+        }
+        // walls 1 to 4 are top, right, bottom and left, each pushing away from itself
+        if (myWallIsOn[0]) {
+            dy += wallMagnitude(0, y);
+        }
+        if (myWallIsOn[1]) {
+            dx -= wallMagnitude(1, myWidth - x);
+        }
+        if (myWallIsOn[2]) {
+            dy -= wallMagnitude(2, myHeight - y);
+        }
+        if (myWallIsOn[3]) {
+            dx += wallMagnitude(3, y);
+        }
+        if (total == null) {
+            mass.applyForce(dx, dy);
+        }
+        else {
+            total.add(dx, dy);
         }
     }
 
@@ -100,10 +322,29 @@ public class Environment {
      * @param keyCode toggles force by pressed key
      */
     public void toggleForce (int keyCode) {
-        Force currentForce = myForces.get(keyCode);
-        currentForce.setToggle(!currentForce.getToggle());
-        System.out.println(KeyEvent.getKeyText(keyCode) + " is now " +
-                           myForces.get(keyCode).getToggle());
+        int bit = getToggleBit(keyCode);
+        if (bit == 0) {
+            return;
+        }
+        myToggles ^= bit;
+        System.out.println(KeyEvent.getKeyText(keyCode) + " is now " + isToggledOn(keyCode));
     }
 
+    private boolean isToggledOn (int keyCode) {
+        return (myToggles & getToggleBit(keyCode)) != 0;
+    }
+
+    private int getToggleBit (int keyCode) {
+        for (int k = 0; k < myKeyCodes.length; k++) {
+            if (myKeyCodes[k] == keyCode) {
+                return 1 << k;
+            }
+        }
+        return 0;
+    }
+
+    private double wallMagnitude (int wall, double distance) {
+        return myWallMagnitudes[wall] /
+               Math.pow(distance / Canvas.FORCE_DISTANCE_DIVIDER, myWallExponents[wall]);
+    }
 }
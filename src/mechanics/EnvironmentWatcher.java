@@ -0,0 +1,178 @@
+package mechanics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+
+/**
+ * Reloads an environment file whenever it is saved, so forces can be tuned
+ * while a simulation runs. A background thread checks every so often
+ * whether the file was changed, lets the writer finish and reads the file;
+ * the new parameters then replace the old ones in a command run between two
+ * steps, so no step feels some of each. A file that cannot be parsed leaves
+ * the old parameters in place, and the failure is kept until a reload
+ * works, for whoever shows it to the user. The file is polled rather than watched
+ * through the file system, which Java 6 cannot do.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class EnvironmentWatcher implements Runnable {
+    // how often the file is checked
+    private static final long POLL_MILLIS = 250;
+    // editors may write a file in several goes, so changes this close
+    // together are read once
+    private static final long SETTLE_MILLIS = 100;
+
+    private File myFile;
+    private Simulation mySimulation;
+    private SimulationThread mySimulationThread;
+    private Runnable myListener;
+    private volatile Exception myError;
+    private Thread myThread;
+    private volatile boolean myIsStopped;
+    // time and length the file had when last read, written only by the watching thread
+    private long myLastModified;
+    private long myLength;
+
+    /**
+     * Constructs a watcher that is not watching yet.
+     *
+     * @param file environment file to watch
+     * @param sim simulation whose environment is replaced
+     * @param simulationThread thread stepping the simulation
+     * @param listener told, on any thread, when a reload worked or failed
+     */
+    public EnvironmentWatcher (File file, Simulation sim, SimulationThread simulationThread,
+                               Runnable listener) {
+        myFile = file.getAbsoluteFile();
+        mySimulation = sim;
+        mySimulationThread = simulationThread;
+        myListener = listener;
+    }
+
+    /**
+     * Returns file being watched.
+     */
+    public File getFile () {
+        return myFile;
+    }
+
+    /**
+     * Returns why the last reload failed, or null if it worked.
+     */
+    public Exception getError () {
+        return myError;
+    }
+
+    /**
+     * Starts watching the file.
+     */
+    public void start () throws IOException {
+        if (!myFile.isFile()) {
+            throw new IOException(myFile + " is not a file");
+        }
+        // the file as it is now has just been loaded
+        myLastModified = myFile.lastModified();
+        myLength = myFile.length();
+        myThread = new Thread(this, "environment watcher");
+        myThread.setDaemon(true);
+        myThread.start();
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    public void stop () {
+        myIsStopped = true;
+        if (myThread != null) {
+            myThread.interrupt();
+        }
+    }
+
+    @Override
+    public void run () {
+        try {
+            while (!myIsStopped) {
+                Thread.sleep(POLL_MILLIS);
+                if (isChanged()) {
+                    // wait until the writer has stopped changing it
+                    do {
+                        Thread.sleep(SETTLE_MILLIS);
+                    }
+                    while (isChanged());
+                    if (!myIsStopped) {
+                        reload();
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    // tells if the file changed since last asked, remembering how it is now
+    private boolean isChanged () {
+        long lastModified = myFile.lastModified();
+        long length = myFile.length();
+        boolean result = lastModified != myLastModified || length != myLength;
+        myLastModified = lastModified;
+        myLength = length;
+        return result;
+    }
+
+    private void reload () {
+        final byte[] contents;
+        try {
+            contents = readAll(myFile);
+        }
+        catch (IOException e) {
+            report(e);
+            return;
+        }
+        mySimulationThread.post(new Runnable() {
+            @Override
+            public void run () {
+                try {
+                    XspReader input =
+                            new XspReader(Channels.newChannel(new ByteArrayInputStream(contents)));
+                    mySimulation.getEnvironment().reload(input);
+                    // resting assemblies may not rest under the new forces
+                    mySimulation.wakeAssemblies();
+                    report(null);
+                }
+                catch (IOException e) {
+                    report(e);
+                }
+                catch (IllegalArgumentException e) {
+                    report(e);
+                }
+            }
+        });
+    }
+
+    private void report (Exception error) {
+        myError = error;
+        myListener.run();
+    }
+
+    private static byte[] readAll (File file) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream((int) file.length());
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            for (int count = input.read(buffer); count >= 0; count = input.read(buffer)) {
+                result.write(buffer, 0, count);
+            }
+        }
+        finally {
+            input.close();
+        }
+        return result.toByteArray();
+    }
+}
@@ -1,12 +1,12 @@
 package mechanics;
 
 import drawings.Bar;
+import drawings.Drawable;
 import drawings.Mass;
 import drawings.Muscle;
 import drawings.Spring;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
 
 
 /**
@@ -23,52 +23,66 @@ public class Factory {
      */
     public void loadModel (Simulation sim, File modelFile) {
         try {
-            Scanner input = new Scanner(modelFile);
-            if ("environment.xsp".equals(modelFile.getName())) {
-                loadEnvironment(sim, input);
+            if (modelFile.getName().endsWith(Snapshot.EXTENSION)) {
+                Snapshot.load(sim, modelFile);
+                return;
             }
-            else {
-                loadAssembly(sim, input);
+            XspReader input = new XspReader(modelFile);
+            try {
+                if ("environment.xsp".equals(modelFile.getName())) {
+                    loadEnvironment(sim, input);
+                }
+                else {
+                    loadAssembly(sim, input);
+                }
+            }
+            finally {
+                input.close();
             }
-            input.close();
         }
-        catch (FileNotFoundException e) {
+        catch (IOException e) {
             // should not happen because File came from user selection
             e.printStackTrace();
         }
     }
 
-    private void loadAssembly (Simulation sim, Scanner input) {
+    private void loadAssembly (Simulation sim, XspReader input) throws IOException {
+        sim.add(readAssembly(sim, input));
+    }
+
+    /**
+     * reads an assembly without adding it to the simulation
+     * 
+     * @param sim simulation the assembly will be added to
+     * @param input reader positioned at the start of an assembly file
+     */
+    Assembly readAssembly (Simulation sim, XspReader input) throws IOException {
         Assembly assembly = new Assembly(sim);
-        while (input.hasNext()) {
-            Scanner line = new Scanner(input.nextLine());
-            if (line.hasNext()) {
-                String type = line.next();
-                if ("mass".equals(type)) {
-                    assembly.add(massCommand(line));
-                }
-                else if ("spring".equals(type)) {
-                    assembly.add(springCommand(line, assembly));
-                }
-                else if ("muscle".equals(type)) {
-                    assembly.add(muscleCommand(line, assembly));
-                }
+        while (input.nextLine()) {
+            String type = input.nextKeyword();
+            if ("mass".equals(type)) {
+                assembly.add(massCommand(input));
+            }
+            else if ("spring".equals(type)) {
+                assembly.add(springCommand(input, assembly));
+            }
+            else if ("muscle".equals(type)) {
+                assembly.add(muscleCommand(input, assembly));
             }
         }
-        sim.add(assembly);
+        return assembly;
     }
 
-    private void loadEnvironment (Simulation sim, Scanner input) {
-        while (input.hasNext()) {
-            Scanner line = new Scanner(input.nextLine());
-            if (line.hasNext()) {
-                String type = line.next();
-                sim.getEnvironment().add(line, type);
+    private void loadEnvironment (Simulation sim, XspReader input) throws IOException {
+        while (input.nextLine()) {
+            String type = input.nextKeyword();
+            if (type != null) {
+                sim.getEnvironment().add(input, type);
             }
         }
     }
 
-    private Mass massCommand (Scanner line) {
+    private Mass massCommand (XspReader line) throws IOException {
         int id = line.nextInt();
         double x = line.nextDouble();
         double y = line.nextDouble();
@@ -76,28 +90,34 @@ public class Factory {
         return new Mass(id, x, y, mass);
     }
 
-    private Spring springCommand (Scanner line, Assembly assembly) {
-        int m1 = line.nextInt();
-        int m2 = line.nextInt();
+    private Spring springCommand (XspReader line, Assembly assembly) throws IOException {
+        Mass m1 = findMass(assembly, line.nextInt(), line.getLine());
+        Mass m2 = findMass(assembly, line.nextInt(), line.getLine());
         double restLength = line.nextDouble();
         double ks = line.nextDouble();
         if (ks >= 0) {
-            return new Spring((Mass) assembly.getDrawable(m1), 
-                              (Mass) assembly.getDrawable(m2), restLength, ks);
+            return new Spring(m1, m2, restLength, ks);
         }
         else {
-            return new Bar((Mass) assembly.getDrawable(m1), 
-                           (Mass) assembly.getDrawable(m2), restLength, ks);
+            return new Bar(m1, m2, restLength, ks);
         }
     }
 
-    private Spring muscleCommand (Scanner line, Assembly assembly) {
-        int m1 = line.nextInt();
-        int m2 = line.nextInt();
+    private Spring muscleCommand (XspReader line, Assembly assembly) throws IOException {
+        Mass m1 = findMass(assembly, line.nextInt(), line.getLine());
+        Mass m2 = findMass(assembly, line.nextInt(), line.getLine());
         double restLength = line.nextDouble();
         double ks = line.nextDouble();
         double amplitude = line.nextDouble();
-        return new Muscle((Mass) assembly.getDrawable(m1), (Mass) assembly.getDrawable(m2),
-                          restLength, ks, amplitude);
+        return new Muscle(m1, m2, restLength, ks, amplitude);
+    }
+
+    private Mass findMass (Assembly assembly, int id, int lineNumber) {
+        Drawable drawing = assembly.getDrawable(id);
+        if (drawing == null) {
+            throw new IllegalArgumentException("line " + lineNumber + ": no mass with id " + id +
+                                               " defined before this line");
+        }
+        return (Mass) drawing;
     }
 }
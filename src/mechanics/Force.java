@@ -5,14 +5,21 @@ import java.awt.geom.Point2D;
 
 /**
  * This class represents a force applied in a specific direction and magnitude.
+ * The force is stored as its change in the X and Y direction; direction and
+ * magnitude are computed from those only when asked for.
  * 
  * @author Robert c. Duvall
  */
 public class Force {
+    // change in the X and Y direction
+    private double myX;
+    private double myY;
+    // polar view, derived from myX and myY when needed
     // angle in degrees
     private double myAngle;
     // "speed" in pixels per second
     private double myMagnitude;
+    private boolean myPolarIsCurrent;
     // force toggled on or off
     private boolean myToggle;
 
@@ -30,8 +37,7 @@ public class Force {
      * @param magnitude force magnitude
      */
     public Force (double angle, double magnitude) {
-        setDirection(angle);
-        setMagnitude(magnitude);
+        setPolar(angle, magnitude);
         setToggle(true);
     }
 
@@ -45,8 +51,7 @@ public class Force {
     public Force (Point2D source, Point2D target) {
         double dx = target.getX() - source.getX();
         double dy = source.getY() - target.getY();
-        setDirection(angleBetween(dx, dy));
-        setMagnitude(distanceBetween(dx, dy));
+        setComponents(dx, dy);
     }
 
     /**
@@ -55,21 +60,26 @@ public class Force {
      * @param other other force to copy
      */
     public Force (Force other) {
-        this(other.getDirection(), other.getMagnitude());
+        myX = other.myX;
+        myY = other.myY;
+        myAngle = other.myAngle;
+        myMagnitude = other.myMagnitude;
+        myPolarIsCurrent = other.myPolarIsCurrent;
+        setToggle(true);
     }
 
     /**
      * Reset this force to zero.
      */
     public void reset () {
-        setDirection(0);
-        setMagnitude(0);
+        setPolar(0, 0);
     }
 
     /**
      * Returns this force's magnitude (in pixels).
      */
     public double getMagnitude () {
+        updatePolar();
         return myMagnitude;
     }
 
@@ -81,7 +91,11 @@ public class Force {
      * @param other force to compare
      */
     public double getRelativeMagnitude (Force other) {
-        return getMagnitude() * Math.cos(Math.toRadians(getAngleBetween(other)));
+        double length = distanceBetween(other.myX, other.myY);
+        if (length == 0) {
+            return getMagnitude() * Math.cos(Math.toRadians(getAngleBetween(other)));
+        }
+        return (myX * other.myX + myY * other.myY) / length;
     }
 
     /**
@@ -95,7 +109,9 @@ public class Force {
      * @param change scale factor
      */
     public void scale (double change) {
-        setMagnitude(getMagnitude() * change);
+        myX *= change;
+        myY *= change;
+        myMagnitude *= change;
     }
 
     /**
@@ -104,7 +120,8 @@ public class Force {
      * @param value new magnitude
      */
     public void setMagnitude (double value) {
-        myMagnitude = value;
+        updatePolar();
+        setPolar(myAngle, value);
     }
 
     /**
@@ -114,6 +131,7 @@ public class Force {
         // standardize between -360 and +360 (keep 360, -360, and 0 as distinct
         // values)
         final double OFFSET = 0.001;
+        updatePolar();
         double sign = (myAngle < 0) ? 1 : -1;
         return ((myAngle + sign * OFFSET) % Math.toDegrees(2 * Math.PI)) - sign * OFFSET;
     }
@@ -140,21 +158,44 @@ public class Force {
      * Sets this force's direction to the given value.
      */
     protected void setDirection (double value) {
-        myAngle = value;
+        updatePolar();
+        setPolar(value, myMagnitude);
     }
 
     /**
      * Returns the change in the X direction represented by this force.
      */
     public double getXChange () {
-        return getMagnitude() * Math.cos(Math.toRadians(getDirection()));
+        return myX;
     }
 
     /**
      * Returns the change in the Y direction represented by this force.
      */
     public double getYChange () {
-        return getMagnitude() * Math.sin(Math.toRadians(getDirection()));
+        return myY;
+    }
+
+    /**
+     * Sets the change in the X and Y direction represented by this force.
+     *
+     * @param dx x-change
+     * @param dy y-change
+     */
+    public void setComponents (double dx, double dy) {
+        myX = dx;
+        myY = dy;
+        myPolarIsCurrent = false;
+    }
+
+    /**
+     * Adds the given change in the X and Y direction to this force.
+     *
+     * @param dx x-change
+     * @param dy y-change
+     */
+    public void add (double dx, double dy) {
+        setComponents(myX + dx, myY + dy);
     }
 
     /**
@@ -180,21 +221,7 @@ public class Force {
      * @param other force to add
      */
     public void sum (Force other) {
-        // double a1 = getAngle();
-        // double a2 = other.getAngle();
-        // double m1 = getMagnitude();
-        // double m2 = other.getMagnitude();
-        // double speed = Math.sqrt(m1 * m1 + m2 * m2 + 2 * m1 * m2 *
-        // Math.cos(Math.toRadians(a1 - a2)));
-        // double angle = Math.toDegrees(Math.asin(m2 *
-        // Math.sin(Math.toRadians(a2 - a1)) / speed)) + a1;
-        // return new Force(angle, speed);
-
-        // more readable, although slightly slower
-        double dx = getXChange() + other.getXChange();
-        double dy = getYChange() + other.getYChange();
-        setDirection(angleBetween(dx, dy));
-        setMagnitude(distanceBetween(dx, dy));
+        add(other.myX, other.myY);
     }
 
     /**
@@ -213,7 +240,11 @@ public class Force {
      * this force.
      */
     public void negate () {
-        turn(Math.toDegrees(Math.PI));
+        if (myPolarIsCurrent) {
+            myAngle = getDirection() + Math.toDegrees(Math.PI);
+        }
+        myX = -myX;
+        myY = -myY;
     }
 
     /**
@@ -252,6 +283,23 @@ public class Force {
         return String.format("(%1.2f, %1.2f)", getDirection(), getMagnitude());
     }
 
+    private void setPolar (double angle, double magnitude) {
+        myAngle = angle;
+        myMagnitude = magnitude;
+        myPolarIsCurrent = true;
+        myX = magnitude * Math.cos(Math.toRadians(angle));
+        myY = magnitude * Math.sin(Math.toRadians(angle));
+    }
+
+    // polar values are only computed when someone asks for them
+    private void updatePolar () {
+        if (!myPolarIsCurrent) {
+            myAngle = angleBetween(myX, myY);
+            myMagnitude = distanceBetween(myX, myY);
+            myPolarIsCurrent = true;
+        }
+    }
+
     /**
      * Returns the distance between given two points
      *
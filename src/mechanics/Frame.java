@@ -0,0 +1,557 @@
+package mechanics;
+
+import drawings.Drawable;
+import drawings.Mass;
+import drawings.Spring;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * What a simulation looked like after one step, ready to paint. A frame is
+ * filled on the simulation thread and painted on the event thread, so
+ * painting never reads the live simulation.
+ *
+ * Lines are grouped by assembly and color into one path each while
+ * capturing, so painting sets each color once per assembly and draws each
+ * path with a single call. Ovals are stamped from an image drawn once per
+ * color and size. Lines are painted first, ovals on top. Frames are
+ * reused; capturing does not allocate once the arrays and paths are large
+ * enough.
+ *
+ * For each assembly the frame also keeps the bounds of everything it
+ * paints and a signature of its shapes, so a painter can tell which parts
+ * of the picture changed between two frames.
+ *
+ * Given a LevelOfDetail, crowded assemblies are captured with less detail:
+ * masses as points, or a raster of how many masses fall in each cell
+ * with an outline around it. Rasters are painted below everything else.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class Frame {
+    private static final int INITIAL_CAPACITY = 64;
+    // lines are one pixel wide, so they reach this far past their ends
+    private static final int LINE_MARGIN = 1;
+    private static final long SIGNATURE_MULTIPLIER = 1000003;
+    // width and height of a mass drawn as a point
+    private static final int POINT_SIZE = 3;
+    private static final Color OUTLINE_COLOR = Color.GRAY;
+    private static final int OPAQUE = 255;
+    // share of its bounding box a mass covers
+    private static final double OVAL_FILL = Math.PI / 4;
+
+    private int myLineCount;
+    // the first myBatchCount entries hold the lines of one assembly and color each
+    private int myBatchCount;
+    private List<Color> myBatchColors = new ArrayList<Color>();
+    private List<Path2D.Float> myBatchPaths = new ArrayList<Path2D.Float>();
+    private int[] myBatchAssemblies = new int[INITIAL_CAPACITY];
+    // first batch of the assembly being captured
+    private int myFirstBatch;
+    // left, top, width and height of each oval
+    private int myOvalCount;
+    private int[] myOvals = new int[4 * INITIAL_CAPACITY];
+    private Color[] myOvalColors = new Color[INITIAL_CAPACITY];
+    // left, top, right and bottom of each assembly, and a hash of its shapes
+    private int myAssemblyCount;
+    private int[] myBounds = new int[4 * INITIAL_CAPACITY];
+    private long[] mySignatures = new long[INITIAL_CAPACITY];
+    // images of ovals, made on the painting thread when first needed
+    private List<Sprite> mySprites = new ArrayList<Sprite>();
+    // the first myRasterCount entries hold the rasters of this frame
+    private int myRasterCount;
+    private List<DensityRaster> myRasters = new ArrayList<DensityRaster>();
+    // masses of the assembly being captured: count, size and range of centers
+    private int myMassCount;
+    private int myMassWidth;
+    private int myMassHeight;
+    private double myMinX;
+    private double myMinY;
+    private double myMaxX;
+    private double myMaxY;
+
+    /**
+     * Replaces the contents of this frame with the current state of the
+     * given simulation.
+     *
+     * @param sim simulation to capture
+     */
+    public void capture (Simulation sim) {
+        capture(sim, null);
+    }
+
+    /**
+     * Replaces the contents of this frame with the current state of the
+     * given simulation, leaving out detail nobody could see.
+     *
+     * @param sim simulation to capture
+     * @param detail decides how much of each assembly to capture, or null
+     *        to capture everything
+     */
+    public void capture (Simulation sim, LevelOfDetail detail) {
+        myLineCount = 0;
+        myRasterCount = 0;
+        myOvalCount = 0;
+        for (int k = 0; k < myBatchCount; k++) {
+            myBatchPaths.get(k).reset();
+        }
+        myBatchCount = 0;
+        List<Assembly> assemblies = sim.getMyAssemblies();
+        myAssemblyCount = 0;
+        for (int k = 0; k < assemblies.size(); k++) {
+            startAssembly();
+            List<Drawable> drawings = assemblies.get(k).getMyDrawings();
+            int level = (detail == null) ? LevelOfDetail.FULL : chooseLevel(drawings, detail);
+            if (level == LevelOfDetail.DENSITY) {
+                captureDensity(drawings, detail.getCellSize(), sim.getSize());
+                continue;
+            }
+            double minSpringLength = (level == LevelOfDetail.POINTS) ?
+                    detail.getMinSpringLength() : 0;
+            for (int d = 0; d < drawings.size(); d++) {
+                capture(drawings.get(d), level == LevelOfDetail.POINTS, minSpringLength);
+            }
+        }
+    }
+
+    /**
+     * Paints this frame.
+     *
+     * @param pen used to paint shapes on the screen
+     */
+    public void paint (Graphics2D pen) {
+        paint(pen, null);
+    }
+
+    /**
+     * Paints the shapes of this frame that may reach into the given area;
+     * anything else is skipped.
+     *
+     * @param pen used to paint shapes on the screen
+     * @param area part of the picture to paint, or null for all of it
+     */
+    public void paint (Graphics2D pen, Rectangle area) {
+        for (int k = 0; k < myRasterCount; k++) {
+            DensityRaster raster = myRasters.get(k);
+            if (area == null || intersects(myBounds, raster.myAssembly, area)) {
+                raster.paint(pen);
+            }
+        }
+        for (int k = 0; k < myBatchCount; k++) {
+            if (area == null || intersects(myBounds, myBatchAssemblies[k], area)) {
+                pen.setColor(myBatchColors.get(k));
+                pen.draw(myBatchPaths.get(k));
+            }
+        }
+        for (int k = 0; k < myOvalCount; k++) {
+            int c = 4 * k;
+            if (area != null &&
+                !area.intersects(myOvals[c], myOvals[c + 1], myOvals[c + 2], myOvals[c + 3])) {
+                continue;
+            }
+            BufferedImage sprite =
+                    getSprite(pen, myOvalColors[k], myOvals[c + 2], myOvals[c + 3]);
+            pen.drawImage(sprite, myOvals[c], myOvals[c + 1], null);
+        }
+    }
+
+    /**
+     * Returns number of shapes in this frame.
+     */
+    public int size () {
+        return myLineCount + myOvalCount + myRasterCount;
+    }
+
+    /**
+     * Returns number of assemblies captured in this frame.
+     */
+    public int getAssemblyCount () {
+        return myAssemblyCount;
+    }
+
+    /**
+     * Returns a hash of every shape the given assembly paints; frames that
+     * look the same have the same signature.
+     *
+     * @param assembly index of the assembly
+     */
+    public long getSignature (int assembly) {
+        return mySignatures[assembly];
+    }
+
+    /**
+     * Returns a hash of every shape in this frame.
+     */
+    public long getSignature () {
+        long signature = myAssemblyCount;
+        for (int k = 0; k < myAssemblyCount; k++) {
+            signature = signature * SIGNATURE_MULTIPLIER + mySignatures[k];
+        }
+        return signature;
+    }
+
+    /**
+     * Copies the bounds of everything the given assembly paints into the
+     * given array as left, top, right and bottom, starting at offset; an
+     * assembly that paints nothing has right left of left.
+     *
+     * @param assembly index of the assembly
+     * @param bounds array to fill
+     * @param offset index of the left coordinate in bounds
+     */
+    public void getBounds (int assembly, int[] bounds, int offset) {
+        System.arraycopy(myBounds, 4 * assembly, bounds, offset, 4);
+    }
+
+    private void startAssembly () {
+        if (myAssemblyCount == mySignatures.length) {
+            myBounds = grow(myBounds);
+            long[] signatures = new long[2 * myAssemblyCount];
+            System.arraycopy(mySignatures, 0, signatures, 0, myAssemblyCount);
+            mySignatures = signatures;
+        }
+        int k = 4 * myAssemblyCount;
+        myBounds[k] = Integer.MAX_VALUE;
+        myBounds[k + 1] = Integer.MAX_VALUE;
+        myBounds[k + 2] = Integer.MIN_VALUE;
+        myBounds[k + 3] = Integer.MIN_VALUE;
+        mySignatures[myAssemblyCount] = 0;
+        myAssemblyCount++;
+        myFirstBatch = myBatchCount;
+    }
+
+    private void capture (Drawable drawing, boolean isPoint, double minSpringLength) {
+        if ("mass".equals(drawing.getClassName())) {
+            Mass mass = (Mass) drawing;
+            if (isPoint) {
+                addOval(Color.BLACK, (int) mass.getX() - POINT_SIZE / 2,
+                        (int) mass.getY() - POINT_SIZE / 2, POINT_SIZE, POINT_SIZE);
+            }
+            else {
+                addOval(Color.BLACK, mass.getLeft(), mass.getTop(), mass.getSize().width,
+                        mass.getSize().height);
+            }
+        }
+        else if (drawing instanceof Spring) {
+            Spring spring = (Spring) drawing;
+            int x1 = (int) spring.getStart().getX();
+            int y1 = (int) spring.getStart().getY();
+            int x2 = (int) spring.getEnd().getX();
+            int y2 = (int) spring.getEnd().getY();
+            int dx = x2 - x1;
+            int dy = y2 - y1;
+            if (dx * dx + dy * dy >= minSpringLength * minSpringLength) {
+                addLine(spring.getLineColor(), x1, y1, x2, y2);
+            }
+        }
+    }
+
+    // measures the masses among the given drawables and asks detail how to
+    // capture them
+    private int chooseLevel (List<Drawable> drawings, LevelOfDetail detail) {
+        myMassCount = 0;
+        myMinX = Double.POSITIVE_INFINITY;
+        myMinY = Double.POSITIVE_INFINITY;
+        myMaxX = Double.NEGATIVE_INFINITY;
+        myMaxY = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < drawings.size(); k++) {
+            if ("mass".equals(drawings.get(k).getClassName())) {
+                Mass mass = (Mass) drawings.get(k);
+                myMassCount++;
+                myMassWidth = mass.getSize().width;
+                myMassHeight = mass.getSize().height;
+                myMinX = Math.min(myMinX, mass.getX());
+                myMinY = Math.min(myMinY, mass.getY());
+                myMaxX = Math.max(myMaxX, mass.getX());
+                myMaxY = Math.max(myMaxY, mass.getY());
+            }
+        }
+        if (myMassCount == 0) {
+            return LevelOfDetail.FULL;
+        }
+        double massArea = (double) myMassWidth * myMassHeight;
+        double area = (myMaxX - myMinX + myMassWidth) * (myMaxY - myMinY + myMassHeight);
+        return detail.choose(myMassCount, myMassCount * massArea / area);
+    }
+
+    // captures the masses measured by chooseLevel as a raster, clipped to
+    // the screen, with an outline around its filled cells
+    private void captureDensity (List<Drawable> drawings, int cellSize, Dimension screen) {
+        int left = Math.max(0, (int) myMinX - myMassWidth / 2);
+        int top = Math.max(0, (int) myMinY - myMassHeight / 2);
+        int right = Math.min(screen.width, (int) myMaxX - myMassWidth / 2 + myMassWidth);
+        int bottom = Math.min(screen.height, (int) myMaxY - myMassHeight / 2 + myMassHeight);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        int columns = (right - left + cellSize - 1) / cellSize;
+        int rows = (bottom - top + cellSize - 1) / cellSize;
+        if (myRasterCount == myRasters.size()) {
+            myRasters.add(new DensityRaster());
+        }
+        DensityRaster raster = myRasters.get(myRasterCount++);
+        raster.reset(myAssemblyCount - 1, left, top, cellSize, columns, rows);
+        for (int k = 0; k < drawings.size(); k++) {
+            if ("mass".equals(drawings.get(k).getClassName())) {
+                Mass mass = (Mass) drawings.get(k);
+                int x = (int) mass.getX();
+                int y = (int) mass.getY();
+                raster.add(x - myMassWidth / 2, y - myMassHeight / 2, myMassWidth, myMassHeight);
+                sign(Color.BLACK, x, y, 0, 0);
+            }
+        }
+        raster.shade();
+        include(left - LINE_MARGIN, top - LINE_MARGIN, left + columns * cellSize + LINE_MARGIN,
+                top + rows * cellSize + LINE_MARGIN);
+        raster.outline(getBatch(OUTLINE_COLOR));
+        myLineCount++;
+    }
+
+    private void addLine (Color color, int x1, int y1, int x2, int y2) {
+        myLineCount++;
+        Path2D.Float path = getBatch(color);
+        path.moveTo(x1, y1);
+        path.lineTo(x2, y2);
+        include(Math.min(x1, x2) - LINE_MARGIN, Math.min(y1, y2) - LINE_MARGIN,
+                Math.max(x1, x2) + LINE_MARGIN, Math.max(y1, y2) + LINE_MARGIN);
+        sign(color, x1, y1, x2, y2);
+    }
+
+    private void addOval (Color color, int left, int top, int width, int height) {
+        if (myOvalCount == myOvalColors.length) {
+            myOvals = grow(myOvals);
+            Color[] colors = new Color[2 * myOvalCount];
+            System.arraycopy(myOvalColors, 0, colors, 0, myOvalCount);
+            myOvalColors = colors;
+        }
+        myOvalColors[myOvalCount] = color;
+        int k = 4 * myOvalCount++;
+        myOvals[k] = left;
+        myOvals[k + 1] = top;
+        myOvals[k + 2] = width;
+        myOvals[k + 3] = height;
+        include(left, top, left + width, top + height);
+        sign(color, left, top, width, height);
+    }
+
+    // grows the bounds of the current assembly to cover the given box
+    private void include (int left, int top, int right, int bottom) {
+        int k = 4 * (myAssemblyCount - 1);
+        myBounds[k] = Math.min(myBounds[k], left);
+        myBounds[k + 1] = Math.min(myBounds[k + 1], top);
+        myBounds[k + 2] = Math.max(myBounds[k + 2], right);
+        myBounds[k + 3] = Math.max(myBounds[k + 3], bottom);
+    }
+
+    private void sign (Color color, int a, int b, int c, int d) {
+        long signature = mySignatures[myAssemblyCount - 1];
+        signature = signature * SIGNATURE_MULTIPLIER + color.getRGB();
+        signature = signature * SIGNATURE_MULTIPLIER + a;
+        signature = signature * SIGNATURE_MULTIPLIER + b;
+        signature = signature * SIGNATURE_MULTIPLIER + c;
+        signature = signature * SIGNATURE_MULTIPLIER + d;
+        mySignatures[myAssemblyCount - 1] = signature;
+    }
+
+    // path of lines of the current assembly with the given color, starting
+    // a new one if needed
+    private Path2D.Float getBatch (Color color) {
+        for (int k = myFirstBatch; k < myBatchCount; k++) {
+            if (myBatchColors.get(k).equals(color)) {
+                return myBatchPaths.get(k);
+            }
+        }
+        if (myBatchCount == myBatchPaths.size()) {
+            myBatchColors.add(color);
+            myBatchPaths.add(new Path2D.Float());
+        }
+        else {
+            myBatchColors.set(myBatchCount, color);
+        }
+        if (myBatchCount == myBatchAssemblies.length) {
+            myBatchAssemblies = grow(myBatchAssemblies);
+        }
+        myBatchAssemblies[myBatchCount] = myAssemblyCount - 1;
+        return myBatchPaths.get(myBatchCount++);
+    }
+
+    private BufferedImage getSprite (Graphics2D pen, Color color, int width, int height) {
+        for (int k = 0; k < mySprites.size(); k++) {
+            Sprite sprite = mySprites.get(k);
+            if (sprite.myWidth == width && sprite.myHeight == height &&
+                sprite.myColor.equals(color)) {
+                return sprite.myImage;
+            }
+        }
+        BufferedImage image = pen.getDeviceConfiguration()
+                .createCompatibleImage(width, height, Transparency.BITMASK);
+        Graphics2D imagePen = image.createGraphics();
+        imagePen.setColor(color);
+        imagePen.fillOval(0, 0, width, height);
+        imagePen.dispose();
+        mySprites.add(new Sprite(color, width, height, image));
+        return image;
+    }
+
+    private static boolean intersects (int[] bounds, int index, Rectangle area) {
+        int k = 4 * index;
+        return bounds[k] < area.x + area.width && area.x < bounds[k + 2] &&
+               bounds[k + 1] < area.y + area.height && area.y < bounds[k + 3];
+    }
+
+    private int[] grow (int[] values) {
+        int[] result = new int[2 * values.length];
+        System.arraycopy(values, 0, result, 0, values.length);
+        return result;
+    }
+
+    /**
+     * Number of masses of one assembly that reach into each cell, and an
+     * image shading each cell darker the more masses overlap it. Arrays and
+     * image are kept for the next capture.
+     */
+    private static class DensityRaster {
+        private int myAssembly;
+        private int myLeft;
+        private int myTop;
+        private int myCellSize;
+        private int myColumns;
+        private int myRows;
+        private int[] myCounts = new int[0];
+        private BufferedImage myImage;
+        private int[] myPixels;
+
+        public void reset (int assembly, int left, int top, int cellSize, int columns,
+                           int rows) {
+            myAssembly = assembly;
+            myLeft = left;
+            myTop = top;
+            myCellSize = cellSize;
+            myColumns = columns;
+            myRows = rows;
+            if (myCounts.length < columns * rows) {
+                myCounts = new int[columns * rows];
+            }
+            else {
+                Arrays.fill(myCounts, 0, columns * rows, 0);
+            }
+            if (myImage == null || myImage.getWidth() < columns || myImage.getHeight() < rows) {
+                myImage = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+                myPixels = ((DataBufferInt) myImage.getRaster().getDataBuffer()).getData();
+            }
+        }
+
+        // counts a mass in every cell its box reaches into
+        public void add (int left, int top, int width, int height) {
+            int firstColumn = Math.max(0, floorDivide(left - myLeft));
+            int lastColumn = Math.min(myColumns - 1, floorDivide(left + width - 1 - myLeft));
+            int firstRow = Math.max(0, floorDivide(top - myTop));
+            int lastRow = Math.min(myRows - 1, floorDivide(top + height - 1 - myTop));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    myCounts[row * myColumns + column]++;
+                }
+            }
+        }
+
+        // turns counts into black, opaque once two masses overlap a cell
+        public void shade () {
+            double alphaPerMass = OPAQUE * OVAL_FILL;
+            int stride = myImage.getWidth();
+            for (int row = 0; row < myRows; row++) {
+                for (int column = 0; column < myColumns; column++) {
+                    int alpha = (int) Math.min(OPAQUE,
+                                               myCounts[row * myColumns + column] * alphaPerMass);
+                    myPixels[row * stride + column] = alpha << 24;
+                }
+            }
+        }
+
+        // adds to path the outline of the filled cells, joining the first
+        // and last filled cell of each row down one side and up the other
+        public void outline (Path2D.Float path) {
+            boolean isStarted = false;
+            for (int row = 0; row < myRows; row++) {
+                int first = firstFilled(row);
+                if (first < myColumns) {
+                    isStarted = addPoint(path, isStarted, first, row);
+                    addPoint(path, isStarted, first, row + 1);
+                }
+            }
+            for (int row = myRows - 1; row >= 0; row--) {
+                int last = lastFilled(row);
+                if (last >= 0) {
+                    addPoint(path, isStarted, last + 1, row + 1);
+                    addPoint(path, isStarted, last + 1, row);
+                }
+            }
+            if (isStarted) {
+                path.closePath();
+            }
+        }
+
+        public void paint (Graphics2D pen) {
+            pen.drawImage(myImage, myLeft, myTop, myLeft + myColumns * myCellSize,
+                          myTop + myRows * myCellSize, 0, 0, myColumns, myRows, null);
+        }
+
+        private boolean addPoint (Path2D.Float path, boolean isStarted, int column, int row) {
+            float x = myLeft + column * myCellSize;
+            float y = myTop + row * myCellSize;
+            if (isStarted) {
+                path.lineTo(x, y);
+            }
+            else {
+                path.moveTo(x, y);
+            }
+            return true;
+        }
+
+        private int floorDivide (int offset) {
+            return (int) Math.floor((double) offset / myCellSize);
+        }
+
+        private int firstFilled (int row) {
+            int column = 0;
+            while (column < myColumns && myCounts[row * myColumns + column] == 0) {
+                column++;
+            }
+            return column;
+        }
+
+        private int lastFilled (int row) {
+            int column = myColumns - 1;
+            while (column >= 0 && myCounts[row * myColumns + column] == 0) {
+                column--;
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Image of one oval.
+     */
+    private static class Sprite {
+        private Color myColor;
+        private int myWidth;
+        private int myHeight;
+        private BufferedImage myImage;
+
+        public Sprite (Color color, int width, int height, BufferedImage image) {
+            myColor = color;
+            myWidth = width;
+            myHeight = height;
+            myImage = image;
+        }
+    }
+}
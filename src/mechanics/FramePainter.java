@@ -0,0 +1,200 @@
+package mechanics;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Paints frames through an offscreen image that keeps the picture between
+ * frames. Only the areas covered by assemblies that changed since the last
+ * painted frame, before and after the change, are drawn again; the rest of
+ * the image is copied as it is. When changed areas cover most of the
+ * picture, or the image had to be made again, everything is redrawn.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class FramePainter {
+    // redraw everything once changed areas cover this much of the picture
+    private static final double FULL_REDRAW_FRACTION = 0.5;
+    // changed areas beyond this many are merged into one
+    private static final int MAX_REGIONS = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private VolatileImage myImage;
+    // false when the image does not show the assemblies recorded below
+    private boolean myIsValid;
+    // assemblies as last drawn into the image
+    private int myAssemblyCount;
+    private long[] mySignatures = new long[INITIAL_CAPACITY];
+    private int[] myBounds = new int[4 * INITIAL_CAPACITY];
+    // areas to draw again, reused between frames
+    private List<Rectangle> myRegions = new ArrayList<Rectangle>();
+    private int myRegionCount;
+    private long myRedrawnArea;
+
+    /**
+     * Paints the given frame, drawing again only what changed since the
+     * last call.
+     *
+     * @param pen used to paint shapes on the screen
+     * @param frame frame to paint
+     * @param width width of the picture
+     * @param height height of the picture
+     */
+    public void paint (Graphics2D pen, Frame frame, int width, int height) {
+        myRedrawnArea = 0;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        do {
+            prepareImage(pen.getDeviceConfiguration(), width, height);
+            if (myIsValid) {
+                findChangedRegions(frame, width, height);
+            }
+            if (!myIsValid || myRegionCount > 0) {
+                Graphics2D imagePen = myImage.createGraphics();
+                if (myIsValid) {
+                    update(imagePen, frame, width, height);
+                }
+                else {
+                    redraw(imagePen, frame, null, width, height);
+                }
+                imagePen.dispose();
+            }
+            record(frame);
+            myIsValid = true;
+            pen.drawImage(myImage, 0, 0, null);
+            if (myImage.contentsLost()) {
+                myIsValid = false;
+            }
+        }
+        while (!myIsValid);
+    }
+
+    /**
+     * Returns number of pixels drawn again by the last call to paint.
+     */
+    public long getRedrawnArea () {
+        return myRedrawnArea;
+    }
+
+    private void prepareImage (GraphicsConfiguration config, int width, int height) {
+        if (myImage != null && myImage.getWidth() == width && myImage.getHeight() == height) {
+            int status = myImage.validate(config);
+            if (status == VolatileImage.IMAGE_OK) {
+                return;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED) {
+                myIsValid = false;
+                return;
+            }
+            myImage.flush();
+        }
+        myImage = config.createCompatibleVolatileImage(width, height);
+        myIsValid = false;
+    }
+
+    // draws again the changed regions found for the given frame
+    private void update (Graphics2D pen, Frame frame, int width, int height) {
+        long area = 0;
+        for (int k = 0; k < myRegionCount; k++) {
+            Rectangle region = myRegions.get(k);
+            area += (long) region.width * region.height;
+        }
+        if (area > FULL_REDRAW_FRACTION * width * height) {
+            redraw(pen, frame, null, width, height);
+            return;
+        }
+        for (int k = 0; k < myRegionCount; k++) {
+            redraw(pen, frame, myRegions.get(k), width, height);
+        }
+    }
+
+    // fills the given area, or the whole picture if null, with only the
+    // given frame
+    private void redraw (Graphics2D pen, Frame frame, Rectangle area, int width, int height) {
+        pen.setClip(area);
+        pen.setColor(Color.WHITE);
+        if (area == null) {
+            pen.fillRect(0, 0, width, height);
+            myRedrawnArea += (long) width * height;
+        }
+        else {
+            pen.fillRect(area.x, area.y, area.width, area.height);
+            myRedrawnArea += (long) area.width * area.height;
+        }
+        frame.paint(pen, area);
+    }
+
+    // collects the old and new bounds of every assembly that looks
+    // different in the given frame than when last drawn
+    private void findChangedRegions (Frame frame, int width, int height) {
+        myRegionCount = 0;
+        int count = Math.max(myAssemblyCount, frame.getAssemblyCount());
+        for (int k = 0; k < count; k++) {
+            boolean isOld = k < myAssemblyCount;
+            boolean isNew = k < frame.getAssemblyCount();
+            if (isOld && isNew && mySignatures[k] == frame.getSignature(k)) {
+                continue;
+            }
+            if (isOld) {
+                addRegion(myBounds, 4 * k, width, height);
+            }
+            if (isNew) {
+                ensureCapacity(k + 1);
+                // bounds of this assembly are recorded again after drawing
+                frame.getBounds(k, myBounds, 4 * k);
+                addRegion(myBounds, 4 * k, width, height);
+            }
+        }
+        if (myRegionCount > MAX_REGIONS) {
+            Rectangle union = myRegions.get(0);
+            for (int k = 1; k < myRegionCount; k++) {
+                union.add(myRegions.get(k));
+            }
+            myRegionCount = 1;
+        }
+    }
+
+    // adds the given bounds, clipped to the picture, unless empty
+    private void addRegion (int[] bounds, int offset, int width, int height) {
+        int left = Math.max(bounds[offset], 0);
+        int top = Math.max(bounds[offset + 1], 0);
+        int right = Math.min(bounds[offset + 2], width);
+        int bottom = Math.min(bounds[offset + 3], height);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        if (myRegionCount == myRegions.size()) {
+            myRegions.add(new Rectangle());
+        }
+        myRegions.get(myRegionCount++).setBounds(left, top, right - left, bottom - top);
+    }
+
+    private void record (Frame frame) {
+        myAssemblyCount = frame.getAssemblyCount();
+        ensureCapacity(myAssemblyCount);
+        for (int k = 0; k < myAssemblyCount; k++) {
+            mySignatures[k] = frame.getSignature(k);
+            frame.getBounds(k, myBounds, 4 * k);
+        }
+    }
+
+    private void ensureCapacity (int count) {
+        if (count <= mySignatures.length) {
+            return;
+        }
+        int capacity = Math.max(count, 2 * mySignatures.length);
+        long[] signatures = new long[capacity];
+        System.arraycopy(mySignatures, 0, signatures, 0, mySignatures.length);
+        mySignatures = signatures;
+        int[] bounds = new int[4 * capacity];
+        System.arraycopy(myBounds, 0, bounds, 0, myBounds.length);
+        myBounds = bounds;
+    }
+}
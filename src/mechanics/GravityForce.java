@@ -1,9 +1,6 @@
 package mechanics;
 
-import drawings.Mass;
-import java.awt.event.KeyEvent;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.IOException;
 
 
 /**
@@ -12,29 +9,22 @@ import java.util.Scanner;
  * @author Jei Min Yoo, Volodymyr Zavidovych
  *
  */
-public class GravityForce extends Force {
-    private static double ourGravityAngle = 0;
-    private static double ourGravityMagnitude = 0;
-    private int myKeyCode = KeyEvent.VK_G;
-    /**
-     * @param mass mass to apply force to
-     * @param forces information about environment's forces
-     */
-    public GravityForce (Mass mass, HashMap<Integer, Force> forces) {
-        boolean forceToggle = forces.get(myKeyCode).getToggle();
-        setMagnitude(ourGravityMagnitude);
-        setDirection(ourGravityAngle);
-        setToggle(forceToggle);
-        scale(mass.getMass());
+public final class GravityForce {
+    private GravityForce () {
+        // does not make sense to construct this class
     }
 
     /**
      * Processes line that came from factory
      * 
      * @param line line of input
+     * @param environment environment to set gravity of
      */
-    public static void readInputLine(Scanner line) {
-        ourGravityAngle = line.nextDouble();
-        ourGravityMagnitude = line.nextDouble();
+    public static void readInputLine (XspReader line, Environment environment)
+        throws IOException {
+        double angle = line.nextDouble();
+        double magnitude = line.nextDouble();
+        Force gravity = new Force(angle, magnitude);
+        environment.setGravity(gravity.getXChange(), gravity.getYChange());
     }
 }
@@ -0,0 +1,150 @@
+package mechanics;
+
+import drawings.Drawable;
+
+
+/**
+ * Maps int ids to Drawable objects without boxing. While ids stay compact
+ * (non-negative and not much larger than the number of entries) they are
+ * kept in a dense array; any other id goes to an open-addressing hash table.
+ * 
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ * 
+ */
+class IdIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Drawable[] myDense = new Drawable[INITIAL_CAPACITY];
+    private int[] myKeys = new int[INITIAL_CAPACITY];
+    private Drawable[] myValues = new Drawable[INITIAL_CAPACITY];
+    private int mySparseSize;
+    private int mySize;
+
+    /**
+     * Returns drawable with the given id, or null if there is none.
+     * 
+     * @param id id to look up
+     */
+    public Drawable get (int id) {
+        if (isDense(id)) {
+            return myDense[id];
+        }
+        return myValues[findSlot(id)];
+    }
+
+    /**
+     * Associates drawable with the given id, replacing any previous one.
+     * 
+     * @param id id of the drawable
+     * @param drawing drawable to store
+     */
+    public void put (int id, Drawable drawing) {
+        if (id >= myDense.length && id < 2 * (mySize + INITIAL_CAPACITY)) {
+            growDense(Math.max(id + 1, myDense.length * 2));
+        }
+        if (isDense(id)) {
+            if (myDense[id] == null) {
+                mySize++;
+            }
+            myDense[id] = drawing;
+            return;
+        }
+        if ((mySparseSize + 1) * 2 > myKeys.length) {
+            rehash(myKeys.length * 2);
+        }
+        int slot = findSlot(id);
+        if (myValues[slot] == null) {
+            mySparseSize++;
+            mySize++;
+        }
+        myKeys[slot] = id;
+        myValues[slot] = drawing;
+    }
+
+    /**
+     * Removes drawable with the given id.
+     * 
+     * @param id id to remove
+     */
+    public void remove (int id) {
+        if (isDense(id)) {
+            if (myDense[id] != null) {
+                myDense[id] = null;
+                mySize--;
+            }
+            return;
+        }
+        int slot = findSlot(id);
+        if (myValues[slot] == null) {
+            return;
+        }
+        myValues[slot] = null;
+        mySparseSize--;
+        mySize--;
+        // re-insert the rest of the probe run so lookups past the hole still work
+        int next = (slot + 1) & (myKeys.length - 1);
+        while (myValues[next] != null) {
+            int key = myKeys[next];
+            Drawable value = myValues[next];
+            myValues[next] = null;
+            int target = findSlot(key);
+            myKeys[target] = key;
+            myValues[target] = value;
+            next = (next + 1) & (myKeys.length - 1);
+        }
+    }
+
+    private boolean isDense (int id) {
+        return id >= 0 && id < myDense.length;
+    }
+
+    // enlarges the dense array and moves sparse entries that now fit into it
+    private void growDense (int capacity) {
+        Drawable[] dense = new Drawable[capacity];
+        System.arraycopy(myDense, 0, dense, 0, myDense.length);
+        myDense = dense;
+        int[] keys = myKeys;
+        Drawable[] values = myValues;
+        myKeys = new int[keys.length];
+        myValues = new Drawable[keys.length];
+        mySparseSize = 0;
+        for (int k = 0; k < keys.length; k++) {
+            if (values[k] == null) {
+                continue;
+            }
+            if (isDense(keys[k])) {
+                myDense[keys[k]] = values[k];
+            }
+            else {
+                int slot = findSlot(keys[k]);
+                myKeys[slot] = keys[k];
+                myValues[slot] = values[k];
+                mySparseSize++;
+            }
+        }
+    }
+
+    private int findSlot (int id) {
+        int mask = myKeys.length - 1;
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (myValues[slot] != null && myKeys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash (int capacity) {
+        int[] keys = myKeys;
+        Drawable[] values = myValues;
+        myKeys = new int[capacity];
+        myValues = new Drawable[capacity];
+        for (int k = 0; k < keys.length; k++) {
+            if (values[k] != null) {
+                int slot = findSlot(keys[k]);
+                myKeys[slot] = keys[k];
+                myValues[slot] = values[k];
+            }
+        }
+    }
+}
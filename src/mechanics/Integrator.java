@@ -0,0 +1,27 @@
+package mechanics;
+
+/**
+ * Advances the masses of an assembly through one (sub)step. Forces of
+ * springs and the environment are impulses per whole step, as they have
+ * always been; a substep covering part of a step applies the matching
+ * part of each impulse, see Assembly.getImpulseScale.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public interface Integrator {
+    /**
+     * Moves every mass of the assembly and enforces its bars, muscles and
+     * walls.
+     *
+     * @param sim simulation being stepped
+     * @param assembly assembly to advance
+     * @param dt elapsed time of this substep
+     */
+    void step (Simulation sim, Assembly assembly, double dt);
+
+    /**
+     * Returns the largest angular frequency times step length for which
+     * an undamped spring stays stable with this method.
+     */
+    double getStabilityLimit ();
+}
@@ -0,0 +1,104 @@
+package mechanics;
+
+/**
+ * Counts durations in buckets that grow with the duration, four per power
+ * of two, so percentiles are within a quarter of the true value whether a
+ * phase takes nanoseconds or seconds. Recording does not allocate. Safe to
+ * record on one thread while reading on another.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+class LatencyHistogram {
+    // each power of two is split into 2 ^ SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = Long.SIZE * SUB_BUCKETS;
+
+    private long[] myCounts = new long[BUCKETS];
+    private long myCount;
+    private long myTotal;
+    private long myMax;
+
+    /**
+     * Counts one duration.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public synchronized void record (long nanos) {
+        long value = Math.max(0, nanos);
+        myCounts[getBucket(value)]++;
+        myCount++;
+        myTotal += value;
+        myMax = Math.max(myMax, value);
+    }
+
+    /**
+     * Returns number of durations counted.
+     */
+    public synchronized long getCount () {
+        return myCount;
+    }
+
+    /**
+     * Returns mean duration in nanoseconds, or 0 if none were counted.
+     */
+    public synchronized double getMean () {
+        return (myCount == 0) ? 0 : (double) myTotal / myCount;
+    }
+
+    /**
+     * Returns longest duration in nanoseconds.
+     */
+    public synchronized long getMax () {
+        return myMax;
+    }
+
+    /**
+     * Returns a duration, in nanoseconds, that the given fraction of all
+     * counted durations do not exceed.
+     *
+     * @param fraction between 0 and 1, such as 0.99 for the 99th percentile
+     */
+    public synchronized long getPercentile (double fraction) {
+        long rank = (long) Math.ceil(fraction * myCount);
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += myCounts[k];
+            if (seen >= rank && seen > 0) {
+                return Math.min(getUpperBound(k), myMax);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets all durations.
+     */
+    public synchronized void reset () {
+        for (int k = 0; k < BUCKETS; k++) {
+            myCounts[k] = 0;
+        }
+        myCount = 0;
+        myTotal = 0;
+        myMax = 0;
+    }
+
+    private static int getBucket (long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // largest value that falls in the given bucket
+    private static long getUpperBound (int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package mechanics;
+
+/**
+ * Decides how much of a large assembly is worth drawing. How crowded an
+ * assembly looks is measured by its coverage: the area of all its masses
+ * over the area of the box around them, so 1 means the masses could just
+ * tile the box and anything above means they overlap.
+ *
+ * Assemblies with few masses, or with little coverage, are drawn in full.
+ * Crowded ones draw masses as points and skip springs too short to see;
+ * the most crowded ones are drawn as a raster shaded by how many masses
+ * fall in each cell, with an outline instead of springs. Settings never
+ * change once made, so they can be shared between threads.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class LevelOfDetail {
+    /**
+     * draw every mass and spring
+     */
+    public static final int FULL = 0;
+    /**
+     * draw masses as points and only springs long enough to see
+     */
+    public static final int POINTS = 1;
+    /**
+     * draw a density raster and an outline
+     */
+    public static final int DENSITY = 2;
+
+    private static final int DEFAULT_MIN_MASSES = 1000;
+    private static final double DEFAULT_POINT_COVERAGE = 1;
+    private static final double DEFAULT_DENSITY_COVERAGE = 4;
+    private static final double DEFAULT_MIN_SPRING_LENGTH = 2;
+    private static final int DEFAULT_CELL_SIZE = 4;
+
+    private int myMinMasses;
+    private double myPointCoverage;
+    private double myDensityCoverage;
+    private double myMinSpringLength;
+    private int myCellSize;
+
+    /**
+     * Constructs default settings, which leave models of up to a thousand
+     * masses alone.
+     */
+    public LevelOfDetail () {
+        this(DEFAULT_MIN_MASSES, DEFAULT_POINT_COVERAGE, DEFAULT_DENSITY_COVERAGE,
+             DEFAULT_MIN_SPRING_LENGTH, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs settings with the given thresholds.
+     *
+     * @param minMasses assemblies with fewer masses are always drawn in full
+     * @param pointCoverage coverage from which masses are drawn as points
+     * @param densityCoverage coverage from which a density raster is drawn
+     * @param minSpringLength springs shorter than this many pixels are
+     *        skipped when masses are drawn as points
+     * @param cellSize width and height of a density raster cell in pixels
+     */
+    public LevelOfDetail (int minMasses, double pointCoverage, double densityCoverage,
+                          double minSpringLength, int cellSize) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("cell size must be positive, not " + cellSize);
+        }
+        myMinMasses = minMasses;
+        myPointCoverage = pointCoverage;
+        myDensityCoverage = densityCoverage;
+        myMinSpringLength = minSpringLength;
+        myCellSize = cellSize;
+    }
+
+    /**
+     * Returns FULL, POINTS or DENSITY for an assembly.
+     *
+     * @param masses number of masses in the assembly
+     * @param coverage area of its masses over the area they are spread on
+     */
+    public int choose (int masses, double coverage) {
+        if (masses < myMinMasses || coverage < myPointCoverage) {
+            return FULL;
+        }
+        return (coverage < myDensityCoverage) ? POINTS : DENSITY;
+    }
+
+    /**
+     * Returns length in pixels below which springs are skipped.
+     */
+    public double getMinSpringLength () {
+        return myMinSpringLength;
+    }
+
+    /**
+     * Returns width and height of a density raster cell in pixels.
+     */
+    public int getCellSize () {
+        return myCellSize;
+    }
+}
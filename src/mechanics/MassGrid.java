@@ -0,0 +1,208 @@
+package mechanics;
+
+import drawings.Mass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Uniform grid over the positions of the masses in a MassStore, used to
+ * answer nearest-mass and radius queries without visiting every mass. The
+ * grid is a snapshot; call rebuild after masses have moved.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ *
+ */
+public class MassGrid {
+    // cells are never smaller than a mass
+    private static final double MIN_CELL_SIZE = 16;
+
+    private MassStore myMasses;
+    private double myCellSize;
+    private double myLeft;
+    private double myTop;
+    private int myColumns;
+    private int myRows;
+    // slots of the masses in cell k are myCellItems[myCellStarts[k] .. myCellStarts[k + 1])
+    private int[] myCellStarts = new int[1];
+    private int[] myCellItems = new int[0];
+    private int[] myCellEnds = new int[0];
+
+    /**
+     * Constructs a grid over the given masses.
+     *
+     * @param masses masses to index
+     */
+    public MassGrid (MassStore masses) {
+        myMasses = masses;
+        rebuild();
+    }
+
+    /**
+     * Re-sorts the masses into cells using their current positions.
+     */
+    public void rebuild () {
+        int count = myMasses.size();
+        if (count == 0) {
+            myColumns = 0;
+            myRows = 0;
+            myCellStarts = new int[1];
+            return;
+        }
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < count; k++) {
+            left = Math.min(left, myMasses.getX(k));
+            top = Math.min(top, myMasses.getY(k));
+            right = Math.max(right, myMasses.getX(k));
+            bottom = Math.max(bottom, myMasses.getY(k));
+        }
+        // about one mass per cell on average
+        double area = Math.max(1, (right - left) * (bottom - top));
+        myCellSize = Math.max(MIN_CELL_SIZE, Math.sqrt(area / count));
+        myLeft = left;
+        myTop = top;
+        myColumns = (int) ((right - left) / myCellSize) + 1;
+        myRows = (int) ((bottom - top) / myCellSize) + 1;
+        int cells = myColumns * myRows;
+        if (myCellStarts.length < cells + 1) {
+            myCellStarts = new int[cells + 1];
+        }
+        else {
+            Arrays.fill(myCellStarts, 0);
+        }
+        if (myCellItems.length < count) {
+            myCellItems = new int[count];
+        }
+        // counting sort of slots by cell
+        for (int k = 0; k < count; k++) {
+            myCellStarts[getCell(k) + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            myCellStarts[c + 1] += myCellStarts[c];
+        }
+        if (myCellEnds.length < cells) {
+            myCellEnds = new int[cells];
+        }
+        System.arraycopy(myCellStarts, 0, myCellEnds, 0, cells);
+        for (int k = 0; k < count; k++) {
+            myCellItems[myCellEnds[getCell(k)]++] = k;
+        }
+    }
+
+    /**
+     * Returns the mass nearest to the given point that is closer than the
+     * given distance, or null if there is none.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param maxDistance masses this far away or farther are ignored
+     */
+    public Mass getNearest (double x, double y, double maxDistance) {
+        if (myColumns == 0) {
+            return null;
+        }
+        int column = clamp(getColumn(x), myColumns);
+        int row = clamp(getRow(y), myRows);
+        int nearest = -1;
+        double best = maxDistance;
+        for (int ring = 0;; ring++) {
+            double bound = getRingDistance(x, y, column, row, ring);
+            if (bound >= best) {
+                break;
+            }
+            for (int c = Math.max(0, column - ring); c <= column + ring && c < myColumns; c++) {
+                // inner columns of the ring only have a top and a bottom cell
+                int step = (Math.abs(c - column) == ring) ? 1 : Math.max(1, 2 * ring);
+                for (int r = row - ring; r <= row + ring; r += step) {
+                    if (r < 0 || r >= myRows) {
+                        continue;
+                    }
+                    int cell = r * myColumns + c;
+                    for (int i = myCellStarts[cell]; i < myCellStarts[cell + 1]; i++) {
+                        int slot = myCellItems[i];
+                        double distance = Force.distanceBetween(myMasses.getX(slot) - x,
+                                                                myMasses.getY(slot) - y);
+                        if (distance < best) {
+                            best = distance;
+                            nearest = slot;
+                        }
+                    }
+                }
+            }
+        }
+        return (nearest < 0) ? null : myMasses.getView(nearest);
+    }
+
+    /**
+     * Returns all masses within the given distance of the given point.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param radius largest distance to include
+     */
+    public List<Mass> getMassesWithin (double x, double y, double radius) {
+        List<Mass> result = new ArrayList<Mass>();
+        if (myColumns == 0) {
+            return result;
+        }
+        int firstColumn = clamp(getColumn(x - radius), myColumns);
+        int lastColumn = clamp(getColumn(x + radius), myColumns);
+        int firstRow = clamp(getRow(y - radius), myRows);
+        int lastRow = clamp(getRow(y + radius), myRows);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * myColumns + c;
+                for (int i = myCellStarts[cell]; i < myCellStarts[cell + 1]; i++) {
+                    int slot = myCellItems[i];
+                    if (Force.distanceBetween(myMasses.getX(slot) - x,
+                                              myMasses.getY(slot) - y) <= radius) {
+                        result.add(myMasses.getView(slot));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // lower bound on the distance from the point to any cell of the ring, or
+    // infinity if the ring lies entirely outside the grid
+    private double getRingDistance (double x, double y, int column, int row, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double bound = Double.POSITIVE_INFINITY;
+        if (column - ring >= 0) {
+            bound = Math.min(bound, Math.max(0, x - (myLeft + (column - ring + 1) * myCellSize)));
+        }
+        if (column + ring < myColumns) {
+            bound = Math.min(bound, Math.max(0, myLeft + (column + ring) * myCellSize - x));
+        }
+        if (row - ring >= 0) {
+            bound = Math.min(bound, Math.max(0, y - (myTop + (row - ring + 1) * myCellSize)));
+        }
+        if (row + ring < myRows) {
+            bound = Math.min(bound, Math.max(0, myTop + (row + ring) * myCellSize - y));
+        }
+        return bound;
+    }
+
+    private int getCell (int slot) {
+        return getRow(myMasses.getY(slot)) * myColumns + getColumn(myMasses.getX(slot));
+    }
+
+    private int getColumn (double x) {
+        return (int) Math.floor((x - myLeft) / myCellSize);
+    }
+
+    private int getRow (double y) {
+        return (int) Math.floor((y - myTop) / myCellSize);
+    }
+
+    private int clamp (int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+}
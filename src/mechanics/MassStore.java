@@ -0,0 +1,345 @@
+package mechanics;
+
+import drawings.Mass;
+
+
+/**
+ * Packed storage for the masses of an assembly. Positions, velocities,
+ * accumulated forces, mass values and fixed flags live in parallel primitive
+ * arrays indexed by slot; each Mass object is a lightweight view onto its slot.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ *
+ */
+public class MassStore {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mySize;
+    private Mass[] myViews;
+    private int[] myIDs;
+    private double[] myX;
+    private double[] myY;
+    private double[] myXVelocity;
+    private double[] myYVelocity;
+    private double[] myXForce;
+    private double[] myYForce;
+    private double[] myMass;
+    private boolean[] myFixed;
+
+    /**
+     * Constructs an empty store.
+     */
+    public MassStore () {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty store with room for the given number of masses.
+     *
+     * @param capacity initial number of slots
+     */
+    public MassStore (int capacity) {
+        int size = Math.max(1, capacity);
+        myViews = new Mass[size];
+        myIDs = new int[size];
+        myX = new double[size];
+        myY = new double[size];
+        myXVelocity = new double[size];
+        myYVelocity = new double[size];
+        myXForce = new double[size];
+        myYForce = new double[size];
+        myMass = new double[size];
+        myFixed = new boolean[size];
+    }
+
+    /**
+     * Adds a mass to the store and returns its slot.
+     *
+     * @param view mass object viewing the new slot
+     * @param id id of the mass
+     * @param x x position
+     * @param y y position
+     * @param xVelocity x component of velocity
+     * @param yVelocity y component of velocity
+     * @param mass mass value
+     */
+    public int add (Mass view, int id, double x, double y,
+                    double xVelocity, double yVelocity, double mass) {
+        ensureCapacity(mySize + 1);
+        int slot = mySize++;
+        myViews[slot] = view;
+        myIDs[slot] = id;
+        myX[slot] = x;
+        myY[slot] = y;
+        myXVelocity[slot] = xVelocity;
+        myYVelocity[slot] = yVelocity;
+        myXForce[slot] = 0;
+        myYForce[slot] = 0;
+        myMass[slot] = mass;
+        myFixed[slot] = mass <= 0;
+        return slot;
+    }
+
+    /**
+     * Appends masses from parallel arrays, creating a view for each, and
+     * returns the slot of the first one.
+     *
+     * @param count number of masses to add
+     * @param ids ids of the masses
+     * @param x x positions
+     * @param y y positions
+     * @param xVelocity x components of velocity
+     * @param yVelocity y components of velocity
+     * @param xForce x components of force accumulated so far
+     * @param yForce y components of force accumulated so far
+     * @param mass mass values
+     */
+    public int addAll (int count, int[] ids, double[] x, double[] y, double[] xVelocity,
+                       double[] yVelocity, double[] xForce, double[] yForce, double[] mass) {
+        ensureCapacity(mySize + count);
+        int first = mySize;
+        System.arraycopy(ids, 0, myIDs, first, count);
+        System.arraycopy(x, 0, myX, first, count);
+        System.arraycopy(y, 0, myY, first, count);
+        System.arraycopy(xVelocity, 0, myXVelocity, first, count);
+        System.arraycopy(yVelocity, 0, myYVelocity, first, count);
+        System.arraycopy(xForce, 0, myXForce, first, count);
+        System.arraycopy(yForce, 0, myYForce, first, count);
+        System.arraycopy(mass, 0, myMass, first, count);
+        mySize += count;
+        for (int slot = first; slot < mySize; slot++) {
+            myFixed[slot] = myMass[slot] <= 0;
+            myViews[slot] = new Mass(this, slot);
+        }
+        return first;
+    }
+
+    /**
+     * Removes the mass in the given slot. The last mass is moved into the
+     * freed slot so the arrays stay contiguous.
+     *
+     * @param slot slot to free
+     */
+    public void remove (int slot) {
+        int last = --mySize;
+        if (slot != last) {
+            myViews[slot] = myViews[last];
+            myIDs[slot] = myIDs[last];
+            myX[slot] = myX[last];
+            myY[slot] = myY[last];
+            myXVelocity[slot] = myXVelocity[last];
+            myYVelocity[slot] = myYVelocity[last];
+            myXForce[slot] = myXForce[last];
+            myYForce[slot] = myYForce[last];
+            myMass[slot] = myMass[last];
+            myFixed[slot] = myFixed[last];
+            myViews[slot].relocate(slot);
+        }
+        myViews[last] = null;
+    }
+
+    /**
+     * Returns the number of masses in the store.
+     */
+    public int size () {
+        return mySize;
+    }
+
+    /**
+     * Returns the mass object viewing the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public Mass getView (int slot) {
+        return myViews[slot];
+    }
+
+    /**
+     * Returns id of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public int getID (int slot) {
+        return myIDs[slot];
+    }
+
+    /**
+     * Returns x position of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getX (int slot) {
+        return myX[slot];
+    }
+
+    /**
+     * Returns y position of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getY (int slot) {
+        return myY[slot];
+    }
+
+    /**
+     * Sets position of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     * @param x new x position
+     * @param y new y position
+     */
+    public void setPosition (int slot, double x, double y) {
+        myX[slot] = x;
+        myY[slot] = y;
+    }
+
+    /**
+     * Returns x component of velocity of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getXVelocity (int slot) {
+        return myXVelocity[slot];
+    }
+
+    /**
+     * Returns y component of velocity of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getYVelocity (int slot) {
+        return myYVelocity[slot];
+    }
+
+    /**
+     * Sets velocity of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     * @param xVelocity new x component
+     * @param yVelocity new y component
+     */
+    public void setVelocity (int slot, double xVelocity, double yVelocity) {
+        myXVelocity[slot] = xVelocity;
+        myYVelocity[slot] = yVelocity;
+    }
+
+    /**
+     * Returns x component of force accumulated on the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getXForce (int slot) {
+        return myXForce[slot];
+    }
+
+    /**
+     * Returns y component of force accumulated on the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getYForce (int slot) {
+        return myYForce[slot];
+    }
+
+    /**
+     * Adds force to the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     * @param xForce x component of the force
+     * @param yForce y component of the force
+     */
+    public void addForce (int slot, double xForce, double yForce) {
+        myXForce[slot] += xForce;
+        myYForce[slot] += yForce;
+    }
+
+    /**
+     * Clears force accumulated on the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public void clearForce (int slot) {
+        myXForce[slot] = 0;
+        myYForce[slot] = 0;
+    }
+
+    /**
+     * Turns accumulated force into velocity for every mass that is not
+     * fixed.
+     *
+     * @param scale fraction of each force's impulse to apply
+     */
+    public void accelerate (double scale) {
+        for (int k = 0; k < mySize; k++) {
+            if (!myFixed[k]) {
+                myXVelocity[k] += myXForce[k] / myMass[k] * scale;
+                myYVelocity[k] += myYForce[k] / myMass[k] * scale;
+            }
+        }
+    }
+
+    /**
+     * Moves every mass that is not fixed by its velocity.
+     *
+     * @param dt elapsed time
+     */
+    public void move (double dt) {
+        for (int k = 0; k < mySize; k++) {
+            if (!myFixed[k]) {
+                myX[k] += myXVelocity[k] * dt;
+                myY[k] += myYVelocity[k] * dt;
+            }
+        }
+    }
+
+    /**
+     * Returns mass value of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public double getMass (int slot) {
+        return myMass[slot];
+    }
+
+    /**
+     * Reports fixed-ness of the mass in the given slot.
+     *
+     * @param slot slot of the mass
+     */
+    public boolean isFixed (int slot) {
+        return myFixed[slot];
+    }
+
+    private void ensureCapacity (int capacity) {
+        if (capacity <= myX.length) {
+            return;
+        }
+        int size = Math.max(capacity, myX.length * 2);
+        Mass[] views = new Mass[size];
+        System.arraycopy(myViews, 0, views, 0, mySize);
+        myViews = views;
+        myIDs = grow(myIDs, size);
+        myX = grow(myX, size);
+        myY = grow(myY, size);
+        myXVelocity = grow(myXVelocity, size);
+        myYVelocity = grow(myYVelocity, size);
+        myXForce = grow(myXForce, size);
+        myYForce = grow(myYForce, size);
+        myMass = grow(myMass, size);
+        boolean[] fixed = new boolean[size];
+        System.arraycopy(myFixed, 0, fixed, 0, mySize);
+        myFixed = fixed;
+    }
+
+    private int[] grow (int[] values, int size) {
+        int[] result = new int[size];
+        System.arraycopy(values, 0, result, 0, mySize);
+        return result;
+    }
+
+    private double[] grow (double[] values, int size) {
+        double[] result = new double[size];
+        System.arraycopy(values, 0, result, 0, mySize);
+        return result;
+    }
+}
@@ -0,0 +1,488 @@
+package mechanics;
+
+import drawings.Drawable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Records where the time of each step goes. Every step is timed as a whole
+ * and has its allocation measured; every few steps, when the simulation
+ * steps on a single thread, the step is instead split into phases: forces
+ * of the environment, springs, bars and muscles, collisions between
+ * assemblies, and the rest, which is mostly integrating masses. Splitting
+ * times every drawable, which slows that step down, so split steps are not
+ * counted in the step histogram. Steps run on several threads are only
+ * timed as a whole: their phases and allocation are not measured, and the
+ * summary says so. Capturing and painting frames are recorded by whoever
+ * does them.
+ *
+ * Metrics can be registered as an MBean and summed up as lines of text.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class Metrics implements MetricsMBean {
+    /**
+     * a whole step
+     */
+    public static final int STEP = 0;
+    /**
+     * forces of the environment
+     */
+    public static final int FORCES = 1;
+    /**
+     * springs that are neither bars nor muscles
+     */
+    public static final int SPRINGS = 2;
+    /**
+     * integrating masses and everything not timed otherwise
+     */
+    public static final int MASSES = 3;
+    /**
+     * bars and muscles
+     */
+    public static final int CONSTRAINTS = 4;
+    /**
+     * collisions between assemblies
+     */
+    public static final int COLLISIONS = 5;
+    /**
+     * capturing a frame
+     */
+    public static final int CAPTURE = 6;
+    /**
+     * painting a frame
+     */
+    public static final int PAINT = 7;
+
+    private static final String[] PHASE_NAMES = {"step", "forces", "springs", "masses",
+                                                 "constraints", "collisions", "capture",
+                                                 "paint"};
+    private static final String OBJECT_NAME = "sodaPlay:type=Metrics,name=simulation";
+    private static final int DEFAULT_SAMPLE_PERIOD = 64;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double MEDIAN = 0.5;
+    private static final double P99 = 0.99;
+    // returned by startPhase when the current step is not split
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    // numbers metrics registered over JMX, so several simulations can be shown at once
+    private static final AtomicInteger ourRegisteredCount = new AtomicInteger();
+
+    private long myBudget;
+    private int mySamplePeriod;
+    private LatencyHistogram[] myHistograms;
+    private ThreadMXBean myThreads;
+    // told once every sample period, when not null
+    private Runnable myListener;
+    // name shown over JMX while registered, null otherwise
+    private ObjectName myObjectName;
+    // written only by the thread stepping the simulation
+    private boolean myIsSplit;
+    private long myStepStart;
+    private long myAllocationStart;
+    private long[] myPhaseTimes = new long[PHASE_NAMES.length];
+    // read by any thread
+    private volatile long myStepCount;
+    private volatile long myStepsOverBudget;
+    private volatile long myAllocatedBytes;
+    private volatile long myLastAllocatedBytes;
+    private volatile boolean myIsOnOneThread = true;
+    private volatile int myAssemblyCount;
+    private volatile int myMassCount;
+    private volatile int mySpringCount;
+    private volatile int myBarCount;
+    private volatile int myMuscleCount;
+
+    /**
+     * Constructs empty metrics.
+     *
+     * @param budget real time one step may take, in nanoseconds
+     */
+    public Metrics (long budget) {
+        myBudget = budget;
+        mySamplePeriod = DEFAULT_SAMPLE_PERIOD;
+        myHistograms = new LatencyHistogram[PHASE_NAMES.length];
+        for (int k = 0; k < myHistograms.length; k++) {
+            myHistograms[k] = new LatencyHistogram();
+        }
+        myThreads = ManagementFactory.getThreadMXBean();
+        if (!isAllocationSupported()) {
+            myAllocatedBytes = -1;
+            myLastAllocatedBytes = -1;
+        }
+    }
+
+    /**
+     * Sets how often a step is split into phases and elements are counted.
+     *
+     * @param steps one in this many steps is split
+     */
+    public void setSamplePeriod (int steps) {
+        mySamplePeriod = Math.max(1, steps);
+    }
+
+    /**
+     * Sets who is told, on the stepping thread, once every sample period,
+     * so a summary shown to the user can be kept current even while
+     * nothing else changes on screen.
+     *
+     * @param listener told when metrics were updated, or null
+     */
+    public void setListener (Runnable listener) {
+        myListener = listener;
+    }
+
+    /**
+     * Shows these metrics over JMX, under a name of their own.
+     */
+    public synchronized void register () throws JMException {
+        if (myObjectName == null) {
+            ObjectName name =
+                    new ObjectName(OBJECT_NAME + ourRegisteredCount.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            myObjectName = name;
+        }
+    }
+
+    /**
+     * Stops showing these metrics over JMX.
+     */
+    public synchronized void unregister () throws JMException {
+        if (myObjectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(myObjectName);
+            myObjectName = null;
+        }
+    }
+
+    /**
+     * Returns a start time to pass to endPhase if the current step is being
+     * split into phases.
+     *
+     * @param metrics metrics of the simulation, or null
+     */
+    public static long startPhase (Metrics metrics) {
+        return (metrics != null && metrics.myIsSplit) ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Returns a start time to pass to endPhase if the current step is being
+     * split into phases and the given drawable's update is timed as a
+     * whole. Masses time their forces themselves and leave the rest to
+     * MASSES.
+     *
+     * @param metrics metrics of the simulation, or null
+     * @param drawing drawable about to be updated
+     */
+    public static long startPhase (Metrics metrics, Drawable drawing) {
+        if (metrics == null || !metrics.myIsSplit || "mass".equals(drawing.getClassName())) {
+            return NOT_TIMED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since start to the given phase of the current step.
+     *
+     * @param metrics metrics of the simulation, or null
+     * @param phase FORCES, SPRINGS, CONSTRAINTS or COLLISIONS
+     * @param start value returned by startPhase
+     */
+    public static void endPhase (Metrics metrics, int phase, long start) {
+        if (start != NOT_TIMED) {
+            metrics.myPhaseTimes[phase] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Adds the time since start to the phase the given drawable's update
+     * belongs to.
+     *
+     * @param metrics metrics of the simulation, or null
+     * @param drawing drawable that was updated
+     * @param start value returned by startPhase
+     */
+    public static void endPhase (Metrics metrics, Drawable drawing, long start) {
+        if (start == NOT_TIMED) {
+            return;
+        }
+        endPhase(metrics, "string".equals(drawing.getClassName()) ? SPRINGS : CONSTRAINTS,
+                 start);
+    }
+
+    /**
+     * Records one duration of a phase done outside of steps.
+     *
+     * @param phase CAPTURE or PAINT
+     * @param nanos duration in nanoseconds
+     */
+    public void record (int phase, long nanos) {
+        myHistograms[phase].record(nanos);
+    }
+
+    /**
+     * Returns lines summing up these metrics, to be shown to the user.
+     */
+    public List<String> getSummary () {
+        List<String> result = new ArrayList<String>();
+        LatencyHistogram step = myHistograms[STEP];
+        result.add(String.format("step %.2f ms median, %.2f ms p99, %.2f ms max, " +
+                                 "%d of %d over %.0f ms budget",
+                                 step.getPercentile(MEDIAN) / NANOS_PER_MILLI,
+                                 step.getPercentile(P99) / NANOS_PER_MILLI,
+                                 step.getMax() / NANOS_PER_MILLI, getStepsOverBudget(),
+                                 step.getCount(), getBudgetMillis()));
+        boolean isOnOneThread = myIsOnOneThread;
+        StringBuilder phases = new StringBuilder("mean ms:");
+        for (int k = FORCES; k < PHASE_NAMES.length; k++) {
+            if (isOnOneThread || k > COLLISIONS) {
+                phases.append(String.format(" %s %.2f", PHASE_NAMES[k],
+                                            myHistograms[k].getMean() / NANOS_PER_MILLI));
+            }
+        }
+        result.add(phases.toString());
+        if (isOnOneThread) {
+            result.add("slowest phase: " + getSlowestPhase());
+            long allocated = getAllocatedBytesPerStep();
+            result.add("allocated per step: " +
+                       ((allocated < 0) ? "unknown" : allocated + " B"));
+        }
+        else {
+            result.add("phases of steps: not measured on several threads");
+            result.add("allocated per step: not measured on several threads");
+        }
+        result.add(String.format("%d assemblies, %d masses, %d springs, %d bars, %d muscles",
+                                 getAssemblyCount(), getMassCount(), getSpringCount(),
+                                 getBarCount(), getMuscleCount()));
+        return result;
+    }
+
+    /**
+     * Starts timing a step.
+     *
+     * @param canSplit true if the step runs on this thread only
+     */
+    void startStep (boolean canSplit) {
+        myIsOnOneThread = canSplit;
+        myIsSplit = canSplit && myStepCount % mySamplePeriod == 0;
+        for (int k = 0; k < myPhaseTimes.length; k++) {
+            myPhaseTimes[k] = 0;
+        }
+        myAllocationStart = getAllocatedBytes();
+        myStepStart = System.nanoTime();
+    }
+
+    /**
+     * Finishes timing a step.
+     *
+     * @param sim simulation that was stepped
+     */
+    void endStep (Simulation sim) {
+        long elapsed = System.nanoTime() - myStepStart;
+        if (myAllocatedBytes >= 0) {
+            myLastAllocatedBytes = getAllocatedBytes() - myAllocationStart;
+            myAllocatedBytes += myLastAllocatedBytes;
+        }
+        if (myIsSplit) {
+            long rest = elapsed;
+            for (int phase = FORCES; phase <= COLLISIONS; phase++) {
+                if (phase != MASSES) {
+                    myHistograms[phase].record(myPhaseTimes[phase]);
+                    rest -= myPhaseTimes[phase];
+                }
+            }
+            myHistograms[MASSES].record(rest);
+            myIsSplit = false;
+        }
+        else {
+            myHistograms[STEP].record(elapsed);
+            if (elapsed > myBudget) {
+                myStepsOverBudget++;
+            }
+        }
+        if (myStepCount % mySamplePeriod == 0) {
+            countElements(sim);
+            if (myListener != null) {
+                myListener.run();
+            }
+        }
+        myStepCount++;
+    }
+
+    @Override
+    public String[] getPhaseNames () {
+        return PHASE_NAMES.clone();
+    }
+
+    @Override
+    public long[] getSampleCounts () {
+        long[] result = new long[PHASE_NAMES.length];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = myHistograms[k].getCount();
+        }
+        return result;
+    }
+
+    @Override
+    public double[] getMeanMillis () {
+        double[] result = new double[PHASE_NAMES.length];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = myHistograms[k].getMean() / NANOS_PER_MILLI;
+        }
+        return result;
+    }
+
+    @Override
+    public double[] getMedianMillis () {
+        return getPercentileMillis(MEDIAN);
+    }
+
+    @Override
+    public double[] getP99Millis () {
+        return getPercentileMillis(P99);
+    }
+
+    @Override
+    public double[] getMaxMillis () {
+        double[] result = new double[PHASE_NAMES.length];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = myHistograms[k].getMax() / NANOS_PER_MILLI;
+        }
+        return result;
+    }
+
+    @Override
+    public double getBudgetMillis () {
+        return myBudget / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getStepCount () {
+        return myStepCount;
+    }
+
+    @Override
+    public long getStepsOverBudget () {
+        return myStepsOverBudget;
+    }
+
+    @Override
+    public String getSlowestPhase () {
+        if (!myIsOnOneThread) {
+            return "unknown";
+        }
+        int slowest = FORCES;
+        for (int k = FORCES; k <= COLLISIONS; k++) {
+            if (myHistograms[k].getMean() > myHistograms[slowest].getMean()) {
+                slowest = k;
+            }
+        }
+        return PHASE_NAMES[slowest];
+    }
+
+    @Override
+    public long getAllocatedBytesPerStep () {
+        long allocated = myAllocatedBytes;
+        if (allocated < 0 || !myIsOnOneThread) {
+            return -1;
+        }
+        return allocated / Math.max(1, myStepCount);
+    }
+
+    @Override
+    public long getLastAllocatedBytes () {
+        if (!myIsOnOneThread) {
+            return -1;
+        }
+        return myLastAllocatedBytes;
+    }
+
+    @Override
+    public int getAssemblyCount () {
+        return myAssemblyCount;
+    }
+
+    @Override
+    public int getMassCount () {
+        return myMassCount;
+    }
+
+    @Override
+    public int getSpringCount () {
+        return mySpringCount;
+    }
+
+    @Override
+    public int getBarCount () {
+        return myBarCount;
+    }
+
+    @Override
+    public int getMuscleCount () {
+        return myMuscleCount;
+    }
+
+    @Override
+    public void reset () {
+        for (LatencyHistogram h : myHistograms) {
+            h.reset();
+        }
+        myStepsOverBudget = 0;
+    }
+
+    private double[] getPercentileMillis (double fraction) {
+        double[] result = new double[PHASE_NAMES.length];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = myHistograms[k].getPercentile(fraction) / NANOS_PER_MILLI;
+        }
+        return result;
+    }
+
+    private void countElements (Simulation sim) {
+        int masses = 0;
+        int springs = 0;
+        int bars = 0;
+        int muscles = 0;
+        List<Assembly> assemblies = sim.getMyAssemblies();
+        for (int k = 0; k < assemblies.size(); k++) {
+            List<Drawable> drawings = assemblies.get(k).getMyDrawings();
+            for (int d = 0; d < drawings.size(); d++) {
+                String name = drawings.get(d).getClassName();
+                if ("mass".equals(name)) {
+                    masses++;
+                }
+                else if ("string".equals(name)) {
+                    springs++;
+                }
+                else if ("bar".equals(name)) {
+                    bars++;
+                }
+                else if ("muscle".equals(name)) {
+                    muscles++;
+                }
+            }
+        }
+        myAssemblyCount = assemblies.size();
+        myMassCount = masses;
+        mySpringCount = springs;
+        myBarCount = bars;
+        myMuscleCount = muscles;
+    }
+
+    private boolean isAllocationSupported () {
+        return myThreads instanceof com.sun.management.ThreadMXBean &&
+               ((com.sun.management.ThreadMXBean) myThreads).isThreadAllocatedMemorySupported();
+    }
+
+    private long getAllocatedBytes () {
+        if (myAllocatedBytes < 0) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) myThreads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,102 @@
+package mechanics;
+
+/**
+ * What Metrics shows over JMX. Arrays are indexed like getPhaseNames, and
+ * times are in milliseconds.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public interface MetricsMBean {
+    /**
+     * Returns names of the timed phases.
+     */
+    String[] getPhaseNames ();
+
+    /**
+     * Returns number of times each phase was timed.
+     */
+    long[] getSampleCounts ();
+
+    /**
+     * Returns mean time of each phase.
+     */
+    double[] getMeanMillis ();
+
+    /**
+     * Returns median time of each phase.
+     */
+    double[] getMedianMillis ();
+
+    /**
+     * Returns 99th percentile time of each phase.
+     */
+    double[] getP99Millis ();
+
+    /**
+     * Returns longest time of each phase.
+     */
+    double[] getMaxMillis ();
+
+    /**
+     * Returns real time one step may take without falling behind.
+     */
+    double getBudgetMillis ();
+
+    /**
+     * Returns number of steps taken.
+     */
+    long getStepCount ();
+
+    /**
+     * Returns number of timed steps that took longer than the budget.
+     */
+    long getStepsOverBudget ();
+
+    /**
+     * Returns name of the phase with the longest mean time within a step,
+     * or "unknown" while steps run on several threads.
+     */
+    String getSlowestPhase ();
+
+    /**
+     * Returns mean bytes allocated per step, or -1 if the JVM cannot tell
+     * or steps run on several threads.
+     */
+    long getAllocatedBytesPerStep ();
+
+    /**
+     * Returns bytes allocated by the last step, or -1 if the JVM cannot
+     * tell or steps run on several threads.
+     */
+    long getLastAllocatedBytes ();
+
+    /**
+     * Returns number of assemblies.
+     */
+    int getAssemblyCount ();
+
+    /**
+     * Returns number of masses.
+     */
+    int getMassCount ();
+
+    /**
+     * Returns number of springs that are neither bars nor muscles.
+     */
+    int getSpringCount ();
+
+    /**
+     * Returns number of bars.
+     */
+    int getBarCount ();
+
+    /**
+     * Returns number of muscles.
+     */
+    int getMuscleCount ();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset ();
+}
@@ -0,0 +1,322 @@
+package mechanics;
+
+import drawings.Drawable;
+import drawings.Spring;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Loads models without holding up either painting or stepping. Assemblies
+ * are parsed and checked on a background thread, then added to the
+ * simulation by a command run between two steps, so a step never sees half
+ * an assembly. Environments and snapshots change what every assembly feels,
+ * which only the simulation thread may touch, so they are read there like
+ * any other command; they are small or quick to map.
+ *
+ * Each load reports how much of its file has been read and can be
+ * cancelled until it has been added.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class ModelLoader {
+    // smallest change in progress worth telling the listener about
+    private static final double PROGRESS_STEP = 0.01;
+
+    private Simulation mySimulation;
+    private SimulationThread mySimulationThread;
+    private Runnable myProgressListener;
+    private Factory myFactory;
+    private ExecutorService myWorker;
+    // loads not yet finished, guarded by this
+    private List<Loading> myLoadings;
+
+    /**
+     * Constructs a loader that adds to the given simulation.
+     *
+     * @param sim simulation to load into
+     * @param simulationThread thread stepping the simulation
+     * @param progressListener told, on any thread, when a load has made
+     *        progress, finished or failed
+     */
+    public ModelLoader (Simulation sim, SimulationThread simulationThread,
+                        Runnable progressListener) {
+        mySimulation = sim;
+        mySimulationThread = simulationThread;
+        myProgressListener = progressListener;
+        myFactory = new Factory();
+        myLoadings = new ArrayList<Loading>();
+        myWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread (Runnable r) {
+                Thread worker = new Thread(r, "model loader");
+                worker.setDaemon(true);
+                // parsing can wait, stepping and painting cannot
+                worker.setPriority(Thread.MIN_PRIORITY);
+                return worker;
+            }
+        });
+    }
+
+    /**
+     * Starts loading the given file; files are loaded in the order given.
+     *
+     * @param file .xsp or snapshot file
+     */
+    public Loading load (File file) {
+        final Loading loading = new Loading(file);
+        synchronized (this) {
+            myLoadings.add(loading);
+        }
+        if (file.getName().endsWith(Snapshot.EXTENSION) ||
+            "environment.xsp".equals(file.getName())) {
+            mySimulationThread.post(new Runnable() {
+                @Override
+                public void run () {
+                    loading.loadNow();
+                }
+            });
+        }
+        else {
+            myWorker.execute(new Runnable() {
+                @Override
+                public void run () {
+                    loading.loadInBackground();
+                }
+            });
+        }
+        return loading;
+    }
+
+    /**
+     * Returns loads that have not finished yet.
+     */
+    public synchronized List<Loading> getLoadings () {
+        return new ArrayList<Loading>(myLoadings);
+    }
+
+    /**
+     * Cancels every load that has not finished yet.
+     */
+    public void cancelAll () {
+        for (Loading loading : getLoadings()) {
+            loading.cancel();
+        }
+    }
+
+    private synchronized void remove (Loading loading) {
+        myLoadings.remove(loading);
+    }
+
+    // rejects assemblies that would break the simulation as soon as they are stepped
+    private static void validate (Assembly assembly) throws IOException {
+        if (assembly.getMasses().size() == 0) {
+            throw new IOException("no masses");
+        }
+        MassStore masses = assembly.getMasses();
+        for (int k = 0; k < masses.size(); k++) {
+            if (!isFinite(masses.getX(k)) || !isFinite(masses.getY(k)) ||
+                !isFinite(masses.getMass(k))) {
+                throw new IOException("mass " + masses.getID(k) + " is not a finite number");
+            }
+        }
+        for (Drawable d : assembly.getMyDrawings()) {
+            if (!"mass".equals(d.getClassName())) {
+                Spring s = (Spring) d;
+                if (!isFinite(s.getLength()) || !isFinite(s.getK())) {
+                    throw new IOException("spring between masses " + s.getStart().getID() +
+                                          " and " + s.getEnd().getID() +
+                                          " is not a finite number");
+                }
+            }
+        }
+    }
+
+    private static boolean isFinite (double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * One file being loaded.
+     */
+    public class Loading {
+        private File myFile;
+        private volatile double myProgress;
+        private volatile boolean myIsCancelled;
+        private volatile boolean myIsDone;
+        private volatile Exception myError;
+        // progress last told to the listener, written only by the loading thread
+        private double myReportedProgress;
+
+        private Loading (File file) {
+            myFile = file;
+        }
+
+        /**
+         * Returns file being loaded.
+         */
+        public File getFile () {
+            return myFile;
+        }
+
+        /**
+         * Returns fraction of the file read so far, from 0 to 1.
+         */
+        public double getProgress () {
+            return myProgress;
+        }
+
+        /**
+         * Returns true once the model has been added, or loading failed or
+         * was cancelled.
+         */
+        public boolean isDone () {
+            return myIsDone;
+        }
+
+        /**
+         * Returns true if loading was cancelled before the model was added.
+         */
+        public boolean isCancelled () {
+            return myIsCancelled;
+        }
+
+        /**
+         * Returns why loading failed, or null if it did not.
+         */
+        public Exception getError () {
+            return myError;
+        }
+
+        /**
+         * Stops loading unless the model has already been added.
+         */
+        public void cancel () {
+            myIsCancelled = true;
+        }
+
+        // runs on the simulation thread
+        private void loadNow () {
+            try {
+                if (!myIsCancelled) {
+                    myFactory.loadModel(mySimulation, myFile);
+                    myProgress = 1;
+                }
+            }
+            catch (RuntimeException e) {
+                // parse errors, and anything else a malformed file provokes
+                fail(e);
+            }
+            finally {
+                finish();
+            }
+        }
+
+        // runs on the loader thread
+        private void loadInBackground () {
+            // once posted, the command that adds the assembly finishes the load
+            boolean isPosted = false;
+            try {
+                XspReader input = new XspReader(new ProgressChannel(this));
+                final Assembly assembly;
+                try {
+                    assembly = myFactory.readAssembly(mySimulation, input);
+                }
+                finally {
+                    input.close();
+                }
+                validate(assembly);
+                mySimulationThread.post(new Runnable() {
+                    @Override
+                    public void run () {
+                        try {
+                            if (!myIsCancelled) {
+                                mySimulation.add(assembly);
+                            }
+                        }
+                        finally {
+                            finish();
+                        }
+                    }
+                });
+                isPosted = true;
+            }
+            catch (InterruptedIOException e) {
+                // cancelled, which is not a failure
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+            catch (RuntimeException e) {
+                // parse errors, and anything else a malformed file provokes
+                fail(e);
+            }
+            finally {
+                if (!isPosted) {
+                    finish();
+                }
+            }
+        }
+
+        private void read (long position, long size) throws InterruptedIOException {
+            if (myIsCancelled) {
+                throw new InterruptedIOException("loading " + myFile + " was cancelled");
+            }
+            myProgress = (size == 0) ? 1 : (double) position / size;
+            if (myProgress - myReportedProgress >= PROGRESS_STEP) {
+                myReportedProgress = myProgress;
+                myProgressListener.run();
+            }
+        }
+
+        private void fail (Exception e) {
+            myError = e;
+        }
+
+        private void finish () {
+            myIsDone = true;
+            remove(this);
+            myProgressListener.run();
+        }
+    }
+
+    // reads a file, telling its loading how far it got and stopping when it is cancelled
+    private static class ProgressChannel implements ReadableByteChannel {
+        private Loading myLoading;
+        private FileChannel myChannel;
+        private long mySize;
+
+        public ProgressChannel (Loading loading) throws IOException {
+            myLoading = loading;
+            myChannel = new FileInputStream(loading.getFile()).getChannel();
+            mySize = myChannel.size();
+        }
+
+        @Override
+        public int read (ByteBuffer destination) throws IOException {
+            int count = myChannel.read(destination);
+            myLoading.read(myChannel.position(), mySize);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen () {
+            return myChannel.isOpen();
+        }
+
+        @Override
+        public void close () throws IOException {
+            myChannel.close();
+        }
+    }
+}
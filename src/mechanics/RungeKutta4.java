@@ -0,0 +1,79 @@
+package mechanics;
+
+/**
+ * Classic fourth order Runge-Kutta on positions and velocities. Four force
+ * evaluations per step buy the most accurate trajectories of the
+ * integrators, at some loss of energy on stiff springs.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class RungeKutta4 implements Integrator {
+    // how far along the step the next stage looks, using the slope of this
+    // one, and the weight of each slope in the result
+    private static final double[] STAGE_OFFSETS = {0.5, 0.5, 1, 0};
+    private static final double[] STAGE_WEIGHTS = {1, 2, 2, 1};
+    private static final double WEIGHT_TOTAL = 6;
+    private static final double STABILITY_LIMIT = 2.8;
+
+    @Override
+    public void step (Simulation sim, Assembly assembly, double dt) {
+        MassStore masses = assembly.getMasses();
+        int count = masses.size();
+        double scale = assembly.getImpulseScale();
+        double[][] scratch = assembly.getScratch(8);
+        double[] x = scratch[0];
+        double[] y = scratch[1];
+        double[] xVelocity = scratch[2];
+        double[] yVelocity = scratch[3];
+        double[] xChange = scratch[4];
+        double[] yChange = scratch[5];
+        double[] xVelocityChange = scratch[6];
+        double[] yVelocityChange = scratch[7];
+        for (int k = 0; k < count; k++) {
+            x[k] = masses.getX(k);
+            y[k] = masses.getY(k);
+            xVelocity[k] = masses.getXVelocity(k);
+            yVelocity[k] = masses.getYVelocity(k);
+            xChange[k] = 0;
+            yChange[k] = 0;
+            xVelocityChange[k] = 0;
+            yVelocityChange[k] = 0;
+        }
+        for (int stage = 0; stage < STAGE_WEIGHTS.length; stage++) {
+            assembly.gatherForces(dt);
+            double weight = STAGE_WEIGHTS[stage];
+            double offset = STAGE_OFFSETS[stage];
+            for (int k = 0; k < count; k++) {
+                if (masses.isFixed(k)) {
+                    continue;
+                }
+                // slopes of this stage, times dt
+                double dx = masses.getXVelocity(k) * dt;
+                double dy = masses.getYVelocity(k) * dt;
+                double dvx = masses.getXForce(k) / masses.getMass(k) * scale;
+                double dvy = masses.getYForce(k) / masses.getMass(k) * scale;
+                xChange[k] += weight * dx;
+                yChange[k] += weight * dy;
+                xVelocityChange[k] += weight * dvx;
+                yVelocityChange[k] += weight * dvy;
+                // state the next stage is evaluated at
+                masses.setPosition(k, x[k] + offset * dx, y[k] + offset * dy);
+                masses.setVelocity(k, xVelocity[k] + offset * dvx, yVelocity[k] + offset * dvy);
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            if (!masses.isFixed(k)) {
+                masses.setPosition(k, x[k] + xChange[k] / WEIGHT_TOTAL,
+                                   y[k] + yChange[k] / WEIGHT_TOTAL);
+                masses.setVelocity(k, xVelocity[k] + xVelocityChange[k] / WEIGHT_TOTAL,
+                                   yVelocity[k] + yVelocityChange[k] / WEIGHT_TOTAL);
+            }
+        }
+        assembly.applyConstraints(dt);
+    }
+
+    @Override
+    public double getStabilityLimit () {
+        return STABILITY_LIMIT;
+    }
+}
@@ -0,0 +1,47 @@
+package mechanics;
+
+import drawings.Drawable;
+import java.util.List;
+
+
+/**
+ * Updates drawables one by one in the order they were loaded: springs add
+ * forces, each mass turns its force into velocity and then moves by the
+ * new velocity, bars and muscles shift their masses. This is how the
+ * simulation has always been stepped. When the simulation has constraint
+ * iterations, bars and muscles are instead solved together at the end.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class SemiImplicitEuler implements Integrator {
+    private static final double STABILITY_LIMIT = 2;
+
+    @Override
+    public void step (Simulation sim, Assembly assembly, double dt) {
+        List<Drawable> drawings = assembly.getMyDrawings();
+        Metrics metrics = sim.getMetrics();
+        if (sim.getConstraintIterations() == 0) {
+            for (int k = 0; k < drawings.size(); k++) {
+                Drawable d = drawings.get(k);
+                long start = Metrics.startPhase(metrics, d);
+                d.update(sim, assembly, dt);
+                Metrics.endPhase(metrics, d, start);
+            }
+            return;
+        }
+        for (int k = 0; k < drawings.size(); k++) {
+            Drawable d = drawings.get(k);
+            if (!"bar".equals(d.getClassName()) && !"muscle".equals(d.getClassName())) {
+                long start = Metrics.startPhase(metrics, d);
+                d.update(sim, assembly, dt);
+                Metrics.endPhase(metrics, d, start);
+            }
+        }
+        assembly.solveConstraints(dt);
+    }
+
+    @Override
+    public double getStabilityLimit () {
+        return STABILITY_LIMIT;
+    }
+}
@@ -2,6 +2,8 @@ package mechanics;
 
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,10 +19,38 @@ import java.util.List;
  * 
  */
 public class Simulation {
+    // below this size an assembly is not worth splitting across threads
+    private static final int MIN_PARALLEL_DRAWINGS = 1000;
+    // fraction of the stability limit substeps are sized for, leaving room
+    // for viscosity, bars and masses on several springs
+    private static final double STABILITY_MARGIN = 0.5;
+
     private List<Assembly> myAssemblies;
-    private Canvas myContainer;
+    // size as of the last step; replaced, never changed, so it can be shared between threads
+    private Dimension mySize;
+    // latest size of the container, written on the event thread when it is resized
+    private volatile Dimension myContainerSize;
     private Environment myEnvironment;
     private int myWalledAreaOffset;
+    // steps assemblies concurrently when not null
+    private StepWorkers myWorkers;
+    private int myThreadCount = 1;
+    // one task per assembly, kept from step to step so stepping creates no objects
+    private List<AssemblyTask> myAssemblyTasks = new ArrayList<AssemblyTask>();
+    // elapsed time of the step the assembly tasks are running
+    private double myStepTime;
+    private Integrator myIntegrator = new SemiImplicitEuler();
+    private int myMaxSubsteps = 1;
+    private int myConstraintIterations;
+    private boolean myIsJacobiConstraints;
+    private Metrics myMetrics;
+    // separates masses of different assemblies when not null
+    private CollisionDetector myCollisions;
+    // lets resting assemblies sleep when not null
+    private SleepPolicy mySleepPolicy;
+    // forces and size last seen, to wake sleeping assemblies when they change
+    private int mySleepToggles;
+    private Dimension mySleepSize;
 
     /**
      * Create a Canvas with the given size.
@@ -29,11 +59,31 @@ public class Simulation {
      */
     public Simulation (Canvas container) {
         myAssemblies = new ArrayList<Assembly>();
-        myContainer = container;
-        myEnvironment = new Environment(container);
+        mySize = new Dimension();
+        if (container != null) {
+            // Swing components may only be read on the event thread, so
+            // they tell the size instead of being asked every step
+            container.addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized (ComponentEvent e) {
+                    myContainerSize = e.getComponent().getSize();
+                }
+            });
+        }
+        myEnvironment = new Environment();
         myWalledAreaOffset = 0;
     }
 
+    /**
+     * Create a simulation of the given fixed size that is not shown on screen.
+     * 
+     * @param size size (in pixels) of the walled area
+     */
+    public Simulation (Dimension size) {
+        this((Canvas) null);
+        mySize = new Dimension(size);
+    }
+
     /**
      * Add an assembly object to the list of assemblies.
      * 
@@ -64,16 +114,137 @@ public class Simulation {
      * @param dt used to increment time
      */
     public void update (double dt) {
-        for (Assembly a : myAssemblies) {
-            a.updateMovers(dt);
+        Metrics metrics = myMetrics;
+        if (metrics != null) {
+            metrics.startStep(myWorkers == null);
+        }
+        Dimension size = readSize();
+        myEnvironment.prepare(size);
+        if (mySleepPolicy != null) {
+            wakeOnChange(size);
+        }
+        // indexed loops, as iterators would be created every step
+        if (myWorkers == null) {
+            for (int k = 0; k < myAssemblies.size(); k++) {
+                Assembly a = myAssemblies.get(k);
+                if (!a.isAsleep()) {
+                    a.updateMovers(dt);
+                }
+            }
+        }
+        else if (myAssemblies.size() >= myThreadCount) {
+            updateInParallel(dt);
+        }
+        else {
+            // too few assemblies to keep every thread busy, so split each one instead
+            for (int k = 0; k < myAssemblies.size(); k++) {
+                Assembly a = myAssemblies.get(k);
+                if (a.isAsleep()) {
+                    continue;
+                }
+                if (a.getMyDrawings().size() < MIN_PARALLEL_DRAWINGS) {
+                    a.updateMovers(dt);
+                }
+                else {
+                    a.updateMovers(dt, myWorkers);
+                }
+            }
+        }
+        if (myCollisions != null) {
+            long start = Metrics.startPhase(metrics);
+            myCollisions.collide(myAssemblies);
+            Metrics.endPhase(metrics, Metrics.COLLISIONS, start);
+        }
+        if (metrics != null) {
+            metrics.endStep(this);
+        }
+    }
+
+    // assemblies share no masses or springs, so each can be stepped on its own thread
+    private void updateInParallel (double dt) {
+        if (!isEachAssemblyTasked()) {
+            myAssemblyTasks.clear();
+            for (int k = 0; k < myAssemblies.size(); k++) {
+                myAssemblyTasks.add(new AssemblyTask(myAssemblies.get(k)));
+            }
+        }
+        myStepTime = dt;
+        myWorkers.runAll(myAssemblyTasks);
+    }
+
+    // checks without creating objects that the tasks match the assemblies, in order
+    private boolean isEachAssemblyTasked () {
+        if (myAssemblyTasks.size() != myAssemblies.size()) {
+            return false;
+        }
+        for (int k = 0; k < myAssemblies.size(); k++) {
+            if (myAssemblyTasks.get(k).myAssembly != myAssemblies.get(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // wakes every assembly when a force is toggled or the window is resized
+    private void wakeOnChange (Dimension size) {
+        int toggles = myEnvironment.getToggles();
+        if (toggles != mySleepToggles || !size.equals(mySleepSize)) {
+            mySleepToggles = toggles;
+            mySleepSize = new Dimension(size);
+            wakeAssemblies();
+        }
+    }
+
+    /**
+     * Makes every assembly move again, as after anything that acts on all
+     * of them changes.
+     */
+    public void wakeAssemblies () {
+        for (int k = 0; k < myAssemblies.size(); k++) {
+            myAssemblies.get(k).wake();
+        }
+    }
+
+    /**
+     * Sets how many threads step assemblies; 1 or less steps them one after
+     * another on the calling thread.
+     * 
+     * @param threads number of threads to use
+     */
+    public void setThreadCount (int threads) {
+        if (myWorkers != null) {
+            myWorkers.shutdown();
+            myWorkers = null;
         }
+        myThreadCount = Math.max(1, threads);
+        if (myThreadCount > 1) {
+            myWorkers = new StepWorkers(myThreadCount);
+        }
+    }
+
+    /**
+     * Returns number of threads stepping assemblies.
+     */
+    public int getThreadCount () {
+        return myThreadCount;
     }
 
     /**
-     * Returns size (in pixels) of the game area.
+     * Returns size (in pixels) of the game area as of the last step. Masses
+     * ask for it every step, possibly from several threads, so it is read
+     * from the container only once a step; do not change what is returned.
      */
     public Dimension getSize () {
-        return myContainer.getSize();
+        return mySize;
+    }
+
+    // takes up the size the container last reported, if any
+    private Dimension readSize () {
+        Dimension resized = myContainerSize;
+        if (resized != null) {
+            mySize = resized;
+        }
+        return mySize;
     }
 
     /**
@@ -99,6 +270,146 @@ public class Simulation {
         myAssemblies.clear();
     }
 
+    /**
+     * Sets the method used to move masses.
+     * 
+     * @param integrator new integrator
+     */
+    public void setIntegrator (Integrator integrator) {
+        myIntegrator = integrator;
+    }
+
+    /**
+     * Gets the method used to move masses.
+     */
+    public Integrator getIntegrator () {
+        return myIntegrator;
+    }
+
+    /**
+     * Lets each step be split into as many as the given number of substeps,
+     * as many as the integrator needs to stay stable on the stiffest spring.
+     * 1, the default, never splits steps.
+     * 
+     * @param substeps largest number of substeps per step
+     */
+    public void setMaxSubsteps (int substeps) {
+        myMaxSubsteps = Math.max(1, substeps);
+    }
+
+    /**
+     * Gets the largest number of substeps per step.
+     */
+    public int getMaxSubsteps () {
+        return myMaxSubsteps;
+    }
+
+    /**
+     * Returns the number of substeps to split the next step of the given
+     * assembly into. With impulses per whole step of length dt, a spring
+     * oscillates at sqrt(stiffness / dt), so a substep of dt / n is stable
+     * while sqrt(stiffness * dt) / n stays under the integrator's limit.
+     * 
+     * @param assembly assembly about to be stepped
+     * @param dt elapsed time of the whole step
+     */
+    public int getSubsteps (Assembly assembly, double dt) {
+        if (myMaxSubsteps == 1) {
+            return 1;
+        }
+        double needed = Math.sqrt(assembly.getStiffness() * dt) /
+                        (STABILITY_MARGIN * myIntegrator.getStabilityLimit());
+        return (int) Math.max(1, Math.min(myMaxSubsteps, Math.ceil(needed)));
+    }
+
+    /**
+     * Sets how many times per step all bars and muscles are enforced
+     * together. 0, the default, enforces each one once as it is updated.
+     * 
+     * @param iterations passes of the constraint solver per step
+     */
+    public void setConstraintIterations (int iterations) {
+        myConstraintIterations = Math.max(0, iterations);
+    }
+
+    /**
+     * Gets how many times per step all bars and muscles are enforced.
+     */
+    public int getConstraintIterations () {
+        return myConstraintIterations;
+    }
+
+    /**
+     * Chooses between Jacobi and Gauss-Seidel passes of the constraint
+     * solver.
+     * 
+     * @param isJacobi true for Jacobi, false (the default) for Gauss-Seidel
+     */
+    public void setJacobiConstraints (boolean isJacobi) {
+        myIsJacobiConstraints = isJacobi;
+    }
+
+    /**
+     * Returns true if the constraint solver makes Jacobi passes.
+     */
+    public boolean isJacobiConstraints () {
+        return myIsJacobiConstraints;
+    }
+
+    /**
+     * Makes masses of different assemblies bounce off each other instead of
+     * passing through; see CollisionDetector.
+     * 
+     * @param isOn true to collide, false (the default) to let masses pass
+     */
+    public void setMassCollisions (boolean isOn) {
+        myCollisions = isOn ? new CollisionDetector() : null;
+    }
+
+    /**
+     * Returns true if masses of different assemblies collide.
+     */
+    public boolean isMassCollisions () {
+        return myCollisions != null;
+    }
+
+    /**
+     * Lets assemblies that have come to rest sleep until something moves
+     * them; see SleepPolicy.
+     * 
+     * @param policy when assemblies sleep, or null (the default) to keep
+     *        stepping all of them
+     */
+    public void setSleepPolicy (SleepPolicy policy) {
+        mySleepPolicy = policy;
+        if (policy == null) {
+            wakeAssemblies();
+        }
+    }
+
+    /**
+     * Gets when assemblies sleep, or null if they never do.
+     */
+    public SleepPolicy getSleepPolicy () {
+        return mySleepPolicy;
+    }
+
+    /**
+     * Records where the time of each step goes from now on.
+     * 
+     * @param metrics where to record, or null (the default) to record nothing
+     */
+    public void setMetrics (Metrics metrics) {
+        myMetrics = metrics;
+    }
+
+    /**
+     * Gets where steps are recorded, or null if they are not.
+     */
+    public Metrics getMetrics () {
+        return myMetrics;
+    }
+
     /**
      * Gets offset value for walled area.
      */
@@ -106,6 +417,16 @@ public class Simulation {
         return myWalledAreaOffset;
     }
 
+    /**
+     * Sets offset value for walled area.
+     * 
+     * @param offset new offset
+     */
+    public void setMyWalledAreaOffset (int offset) {
+        myWalledAreaOffset = offset;
+        wakeAssemblies();
+    }
+
     /**
      * Changes walled area offset.
      * 
@@ -113,6 +434,23 @@ public class Simulation {
      */
     public void changeMyWalledAreaOffset (int offsetIncrement) {
         myWalledAreaOffset += offsetIncrement;
+        wakeAssemblies();
         System.out.println("Offset is now " + myWalledAreaOffset);
     }
+
+    // steps one assembly of a step run in parallel, unless it is asleep
+    private class AssemblyTask implements Runnable {
+        private Assembly myAssembly;
+
+        public AssemblyTask (Assembly assembly) {
+            myAssembly = assembly;
+        }
+
+        @Override
+        public void run () {
+            if (!myAssembly.isAsleep()) {
+                myAssembly.updateMovers(myStepTime);
+            }
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package mechanics;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Steps a simulation on its own thread. Steps have a fixed length in
+ * simulated time and are taken whenever enough real time has accumulated,
+ * so a slow frame is caught up on instead of slowing the simulation down.
+ * Anything else that touches the simulation is posted as a command and run
+ * between steps. After every change the state is captured into a Frame;
+ * frames are triple buffered so neither thread ever waits for the other to
+ * capture or paint. A frame that looks the same as the last one is not
+ * passed on, so a scene at rest is not painted again.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class SimulationThread implements Runnable {
+    // steps to catch up on at most after a stall, beyond that time is dropped
+    private static final int MAX_CATCH_UP_STEPS = 5;
+
+    private Simulation mySimulation;
+    private double myStepTime;
+    private long myStepNanos;
+    private Runnable myFrameListener;
+    private BlockingQueue<Runnable> myCommands;
+    private Thread myThread;
+    private volatile boolean myIsRunning;
+    // written only on the simulation thread
+    private Frame myBackFrame;
+    private LevelOfDetail myLevelOfDetail;
+    // guarded by this
+    private Frame myReadyFrame;
+    private boolean myReadyFrameIsNew;
+    // signature of the last frame passed on, written only on the simulation thread
+    private long myPublishedSignature;
+    private boolean myHasPublished;
+    // read only by whoever paints
+    private Frame myFrontFrame;
+
+    /**
+     * Constructs a paused thread for the given simulation.
+     *
+     * @param sim simulation to step
+     * @param stepTime simulated time of one step
+     * @param stepNanos real time between steps, in nanoseconds
+     * @param frameListener told, on the simulation thread, when a new frame
+     *        is ready
+     */
+    public SimulationThread (Simulation sim, double stepTime, long stepNanos,
+                             Runnable frameListener) {
+        mySimulation = sim;
+        myStepTime = stepTime;
+        myStepNanos = stepNanos;
+        myFrameListener = frameListener;
+        myCommands = new LinkedBlockingQueue<Runnable>();
+        myBackFrame = new Frame();
+        myReadyFrame = new Frame();
+        myFrontFrame = new Frame();
+    }
+
+    /**
+     * Starts or resumes stepping.
+     */
+    public void start () {
+        myIsRunning = true;
+        if (myThread == null) {
+            myThread = new Thread(this, "simulation");
+            myThread.setDaemon(true);
+            myThread.start();
+        }
+        // wake the thread so it starts counting time from now
+        post(new Runnable() {
+            @Override
+            public void run () {
+                // nothing to do
+            }
+        });
+    }
+
+    /**
+     * Pauses stepping; commands are still run.
+     */
+    public void stop () {
+        myIsRunning = false;
+    }
+
+    /**
+     * Returns true if the simulation is being stepped.
+     */
+    public boolean isRunning () {
+        return myIsRunning;
+    }
+
+    /**
+     * Runs the given command on the simulation thread before the next step.
+     *
+     * @param command code that reads or changes the simulation
+     */
+    public void post (Runnable command) {
+        myCommands.add(command);
+    }
+
+    /**
+     * Sets how much detail of large assemblies is captured from now on.
+     *
+     * @param detail level of detail, or null to capture everything
+     */
+    public void setLevelOfDetail (final LevelOfDetail detail) {
+        post(new Runnable() {
+            @Override
+            public void run () {
+                myLevelOfDetail = detail;
+            }
+        });
+    }
+
+    /**
+     * Returns the most recently captured frame. Meant to be called by a
+     * single painting thread; the frame stays valid until the next call.
+     */
+    public Frame getLatestFrame () {
+        synchronized (this) {
+            if (myReadyFrameIsNew) {
+                Frame frame = myFrontFrame;
+                myFrontFrame = myReadyFrame;
+                myReadyFrame = frame;
+                myReadyFrameIsNew = false;
+            }
+        }
+        return myFrontFrame;
+    }
+
+    @Override
+    public void run () {
+        long last = System.nanoTime();
+        long accumulated = 0;
+        publish();
+        try {
+            while (true) {
+                long wait = myIsRunning ? myStepNanos - accumulated : Long.MAX_VALUE;
+                Runnable command = myCommands.poll(wait, TimeUnit.NANOSECONDS);
+                boolean isChanged = false;
+                while (command != null) {
+                    runCommand(command);
+                    isChanged = true;
+                    command = myCommands.poll();
+                }
+                long now = System.nanoTime();
+                if (myIsRunning) {
+                    accumulated = Math.min(accumulated + now - last,
+                                           MAX_CATCH_UP_STEPS * myStepNanos);
+                    while (accumulated >= myStepNanos) {
+                        mySimulation.update(myStepTime);
+                        accumulated -= myStepNanos;
+                        isChanged = true;
+                    }
+                }
+                else {
+                    accumulated = 0;
+                }
+                last = now;
+                if (isChanged) {
+                    publish();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            // nothing left to do
+        }
+    }
+
+    private void runCommand (Runnable command) {
+        try {
+            command.run();
+        }
+        catch (RuntimeException e) {
+            // a bad command should not stop the simulation
+            e.printStackTrace();
+        }
+    }
+
+    private void publish () {
+        long start = System.nanoTime();
+        myBackFrame.capture(mySimulation, myLevelOfDetail);
+        Metrics metrics = mySimulation.getMetrics();
+        if (metrics != null) {
+            metrics.record(Metrics.CAPTURE, System.nanoTime() - start);
+        }
+        long signature = myBackFrame.getSignature();
+        if (myHasPublished && signature == myPublishedSignature) {
+            return;
+        }
+        myPublishedSignature = signature;
+        myHasPublished = true;
+        synchronized (this) {
+            Frame frame = myReadyFrame;
+            myReadyFrame = myBackFrame;
+            myBackFrame = frame;
+            myReadyFrameIsNew = true;
+        }
+        myFrameListener.run();
+    }
+}
@@ -0,0 +1,71 @@
+package mechanics;
+
+/**
+ * Decides when an assembly has come to rest and need not be stepped. An
+ * assembly rests while no mass moves faster than a given speed and no
+ * spring is stretched or squeezed by more than a given fraction of its
+ * rest length. Once it has rested for a number of steps in a row it falls
+ * asleep: its masses stop and the simulation skips it until something
+ * wakes it. Assemblies with muscles never rest. Settings never change once
+ * made, so they can be shared between threads.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class SleepPolicy {
+    private static final double DEFAULT_MAX_SPEED = 0.5;
+    // structures hanging or lying under gravity sag by a few percent
+    private static final double DEFAULT_MAX_STRAIN = 0.1;
+    private static final int DEFAULT_STEPS = 100;
+
+    private double myMaxSpeed;
+    private double myMaxStrain;
+    private int mySteps;
+
+    /**
+     * Constructs default settings, which put an assembly to sleep once its
+     * masses have crept along at less than half a pixel per unit of time
+     * for a hundred steps.
+     */
+    public SleepPolicy () {
+        this(DEFAULT_MAX_SPEED, DEFAULT_MAX_STRAIN, DEFAULT_STEPS);
+    }
+
+    /**
+     * Constructs settings with the given thresholds.
+     *
+     * @param maxSpeed fastest a mass of a resting assembly moves, in pixels
+     *        per unit of time
+     * @param maxStrain largest change in length of a spring of a resting
+     *        assembly, as a fraction of its rest length
+     * @param steps number of steps an assembly rests before falling asleep
+     */
+    public SleepPolicy (double maxSpeed, double maxStrain, int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("steps must be positive, not " + steps);
+        }
+        myMaxSpeed = maxSpeed;
+        myMaxStrain = maxStrain;
+        mySteps = steps;
+    }
+
+    /**
+     * Returns fastest a mass of a resting assembly moves.
+     */
+    public double getMaxSpeed () {
+        return myMaxSpeed;
+    }
+
+    /**
+     * Returns largest strain of a spring of a resting assembly.
+     */
+    public double getMaxStrain () {
+        return myMaxStrain;
+    }
+
+    /**
+     * Returns number of steps an assembly rests before falling asleep.
+     */
+    public int getSteps () {
+        return mySteps;
+    }
+}
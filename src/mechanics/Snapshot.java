@@ -0,0 +1,346 @@
+package mechanics;
+
+import drawings.Bar;
+import drawings.Drawable;
+import drawings.Mass;
+import drawings.Muscle;
+import drawings.Spring;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Saves a whole simulation to a binary file and loads it back. Values are
+ * stored column by column so that loading copies each column straight from
+ * the memory-mapped file into the packed arrays of a MassStore.
+ *
+ * Layout, big-endian: magic, version, toggles, walled area offset, gravity
+ * (x, y), viscosity, center mass (magnitude, exponent), four walls
+ * (magnitude, exponent), number of assemblies, then per assembly:
+ * number of drawables, one kind byte per drawable, mass columns (id, x, y,
+ * x velocity, y velocity, x force, y force, mass), spring columns (start,
+ * end, length, k) where start and end index the masses in drawable order,
+ * and muscle columns (amplitude, initial length, age).
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public final class Snapshot {
+    /**
+     * file name extension of snapshots
+     */
+    public static final String EXTENSION = ".xsb";
+    /**
+     * current version of the format
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x58535042; // "XSPB"
+    private static final int WALL_COUNT = 4;
+    private static final byte MASS = 0;
+    private static final byte SPRING = 1;
+    private static final byte BAR = 2;
+    private static final byte MUSCLE = 3;
+    // double columns written per mass, after its id
+    private static final int MASS_COLUMNS = 7;
+
+    private Snapshot () {
+        // does not make sense to construct this class
+    }
+
+    /**
+     * Writes the given simulation to a file.
+     *
+     * @param sim simulation to save
+     * @param file file to write
+     */
+    public static void save (Simulation sim, File file) throws IOException {
+        DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeEnvironment(sim, output);
+            List<Assembly> assemblies = sim.getMyAssemblies();
+            output.writeInt(assemblies.size());
+            for (Assembly a : assemblies) {
+                writeAssembly(a, output);
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Replaces the assemblies and environment of the given simulation with
+     * those saved in a file.
+     *
+     * @param sim simulation to load into
+     * @param file file to read
+     */
+    public static void load (Simulation sim, File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 2 * 4 || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported snapshot version " + version);
+            }
+            // read everything before touching the simulation, so a bad file leaves it as it was
+            int toggles = buffer.getInt();
+            int offset = buffer.getInt();
+            Environment environment = readEnvironment(buffer);
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IOException(file + " has bad assembly count " + count);
+            }
+            List<Assembly> assemblies = new ArrayList<Assembly>(count);
+            for (int k = 0; k < count; k++) {
+                assemblies.add(readAssembly(sim, buffer));
+            }
+
+            sim.getEnvironment().setToggles(toggles);
+            sim.getEnvironment().copyParameters(environment);
+            sim.setMyWalledAreaOffset(offset);
+            sim.clearAssemblies();
+            for (Assembly a : assemblies) {
+                sim.add(a);
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated");
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void writeEnvironment (Simulation sim, DataOutputStream output)
+        throws IOException {
+        Environment environment = sim.getEnvironment();
+        output.writeInt(environment.getToggles());
+        output.writeInt(sim.getMyWalledAreaOffset());
+        output.writeDouble(environment.getXGravity());
+        output.writeDouble(environment.getYGravity());
+        output.writeDouble(environment.getViscosity());
+        output.writeDouble(environment.getCenterMassMagnitude());
+        output.writeDouble(environment.getCenterMassExponent());
+        for (int id = 1; id <= WALL_COUNT; id++) {
+            output.writeDouble(environment.getWallMagnitude(id));
+            output.writeDouble(environment.getWallExponent(id));
+        }
+    }
+
+    // reads force parameters, which follow the toggles and walled area offset
+    private static Environment readEnvironment (ByteBuffer buffer) {
+        Environment environment = new Environment();
+        environment.setGravity(buffer.getDouble(), buffer.getDouble());
+        environment.setViscosity(buffer.getDouble());
+        environment.setCenterMass(buffer.getDouble(), buffer.getDouble());
+        for (int id = 1; id <= WALL_COUNT; id++) {
+            environment.setWall(id, buffer.getDouble(), buffer.getDouble());
+        }
+        return environment;
+    }
+
+    private static void writeAssembly (Assembly assembly, DataOutputStream output)
+        throws IOException {
+        List<Drawable> drawings = assembly.getMyDrawings();
+        MassStore store = assembly.getMasses();
+        // index of each slot's mass in drawable order
+        int[] indices = new int[store.size()];
+        int massCount = 0;
+        output.writeInt(drawings.size());
+        for (Drawable d : drawings) {
+            byte kind = getKind(d);
+            output.writeByte(kind);
+            if (kind == MASS) {
+                indices[((Mass) d).getSlot()] = massCount++;
+            }
+        }
+        for (Drawable d : drawings) {
+            if (getKind(d) == MASS) {
+                output.writeInt(((Mass) d).getID());
+            }
+        }
+        for (int column = 0; column < MASS_COLUMNS; column++) {
+            for (Drawable d : drawings) {
+                if (getKind(d) == MASS) {
+                    output.writeDouble(getMassColumn(store, ((Mass) d).getSlot(), column));
+                }
+            }
+        }
+        for (int column = 0; column < 2; column++) {
+            for (Drawable d : drawings) {
+                if (getKind(d) != MASS) {
+                    Spring s = (Spring) d;
+                    Mass end = (column == 0) ? s.getStart() : s.getEnd();
+                    if (!end.isStoredIn(store)) {
+                        throw new IllegalArgumentException("spring attached to mass " +
+                                                           end.getID() +
+                                                           " outside its assembly");
+                    }
+                    output.writeInt(indices[end.getSlot()]);
+                }
+            }
+        }
+        for (int column = 0; column < 2; column++) {
+            for (Drawable d : drawings) {
+                if (getKind(d) != MASS) {
+                    Spring s = (Spring) d;
+                    output.writeDouble((column == 0) ? s.getLength() : s.getK());
+                }
+            }
+        }
+        for (int column = 0; column < 3; column++) {
+            for (Drawable d : drawings) {
+                if (getKind(d) == MUSCLE) {
+                    Muscle m = (Muscle) d;
+                    output.writeDouble((column == 0) ? m.getAmplitude() :
+                                       (column == 1) ? m.getInitialLength() : m.getMuscleAge());
+                }
+            }
+        }
+    }
+
+    private static Assembly readAssembly (Simulation sim, ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IOException("bad drawable count " + count);
+        }
+        byte[] kinds = new byte[count];
+        buffer.get(kinds);
+        int massCount = 0;
+        int springCount = 0;
+        int muscleCount = 0;
+        for (byte kind : kinds) {
+            if (kind == MASS) {
+                massCount++;
+            }
+            else {
+                springCount++;
+                if (kind == MUSCLE) {
+                    muscleCount++;
+                }
+            }
+        }
+        int[] ids = readInts(buffer, massCount);
+        double[] x = readDoubles(buffer, massCount);
+        double[] y = readDoubles(buffer, massCount);
+        double[] xVelocity = readDoubles(buffer, massCount);
+        double[] yVelocity = readDoubles(buffer, massCount);
+        double[] xForce = readDoubles(buffer, massCount);
+        double[] yForce = readDoubles(buffer, massCount);
+        double[] mass = readDoubles(buffer, massCount);
+        int[] starts = readInts(buffer, springCount);
+        int[] ends = readInts(buffer, springCount);
+        double[] lengths = readDoubles(buffer, springCount);
+        double[] ks = readDoubles(buffer, springCount);
+        double[] amplitudes = readDoubles(buffer, muscleCount);
+        double[] initialLengths = readDoubles(buffer, muscleCount);
+        double[] ages = readDoubles(buffer, muscleCount);
+
+        Assembly assembly = new Assembly(sim);
+        MassStore store = assembly.getMasses();
+        int first = store.addAll(massCount, ids, x, y, xVelocity, yVelocity, xForce, yForce, mass);
+        int nextMass = first;
+        int nextSpring = 0;
+        int nextMuscle = 0;
+        for (byte kind : kinds) {
+            if (kind == MASS) {
+                assembly.add(store.getView(nextMass++));
+                continue;
+            }
+            int start = starts[nextSpring];
+            int end = ends[nextSpring];
+            if (start < 0 || start >= massCount || end < 0 || end >= massCount) {
+                throw new IOException("spring " + nextSpring + " refers to a missing mass");
+            }
+            Mass m1 = store.getView(first + start);
+            Mass m2 = store.getView(first + end);
+            Spring spring;
+            if (kind == SPRING) {
+                spring = new Spring(m1, m2, lengths[nextSpring], ks[nextSpring]);
+            }
+            else if (kind == BAR) {
+                spring = new Bar(m1, m2, lengths[nextSpring], ks[nextSpring]);
+            }
+            else if (kind == MUSCLE) {
+                Muscle muscle = new Muscle(m1, m2, initialLengths[nextMuscle], ks[nextSpring],
+                                           amplitudes[nextMuscle]);
+                muscle.setMuscleAge(ages[nextMuscle++]);
+                spring = muscle;
+            }
+            else {
+                throw new IOException("unknown drawable kind " + kind);
+            }
+            // bars and muscles compute their own length on construction
+            spring.setLength(lengths[nextSpring++]);
+            assembly.add(spring);
+        }
+        return assembly;
+    }
+
+    private static byte getKind (Drawable d) {
+        String name = d.getClassName();
+        if ("mass".equals(name)) {
+            return MASS;
+        }
+        else if ("string".equals(name)) {
+            return SPRING;
+        }
+        else if ("bar".equals(name)) {
+            return BAR;
+        }
+        else if ("muscle".equals(name)) {
+            return MUSCLE;
+        }
+        throw new IllegalArgumentException("cannot save drawable of type " + name);
+    }
+
+    private static double getMassColumn (MassStore store, int slot, int column) {
+        switch (column) {
+            case 0:
+                return store.getX(slot);
+            case 1:
+                return store.getY(slot);
+            case 2:
+                return store.getXVelocity(slot);
+            case 3:
+                return store.getYVelocity(slot);
+            case 4:
+                return store.getXForce(slot);
+            case 5:
+                return store.getYForce(slot);
+            default:
+                return store.getMass(slot);
+        }
+    }
+
+    private static int[] readInts (ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static double[] readDoubles (ByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * 8);
+        return values;
+    }
+}
@@ -0,0 +1,180 @@
+package mechanics;
+
+import drawings.Drawable;
+import drawings.Mass;
+import drawings.Spring;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Splits the drawables of one assembly into batches that can be updated on
+ * several threads without locks. Springs are edge colored so that no two
+ * springs of one color share a mass; a whole color can then be applied at
+ * once. A step runs, in order: force springs color by color, then those
+ * left uncolored, all masses, then bars and muscles color by color, or all
+ * together on one thread if the simulation has constraint iterations.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ *
+ */
+class SpringColoring {
+    private List<List<Drawable>> myForceColors;
+    private List<List<Drawable>> myConstraintColors;
+    private List<Drawable> myMasses;
+    // force springs that could not be colored, updated on one thread before the masses move
+    private List<Drawable> mySequentialSprings;
+    // anything else, or bars and muscles that could not be colored, updated on one thread
+    private List<Drawable> mySequential;
+    private MassStore myStore;
+    // chunks of each batch, made once for a number of threads so stepping creates no objects
+    private int myChunkCount;
+    private List<List<Runnable>> myForceTasks;
+    private List<Runnable> myMassTasks;
+    private List<List<Runnable>> myConstraintTasks;
+    // what the chunks are updating, set before each batch is run
+    private Simulation mySimulation;
+    private Assembly myAssembly;
+    private double myDt;
+
+    /**
+     * Colors the given drawables.
+     *
+     * @param drawings drawables of the assembly
+     * @param masses packed storage of the assembly's masses
+     */
+    public SpringColoring (List<Drawable> drawings, MassStore masses) {
+        myForceColors = new ArrayList<List<Drawable>>();
+        myConstraintColors = new ArrayList<List<Drawable>>();
+        myMasses = new ArrayList<Drawable>();
+        mySequentialSprings = new ArrayList<Drawable>();
+        mySequential = new ArrayList<Drawable>();
+        myStore = masses;
+        long[] forceColorsUsed = new long[masses.size()];
+        long[] constraintColorsUsed = new long[masses.size()];
+        for (Drawable d : drawings) {
+            if ("mass".equals(d.getClassName())) {
+                myMasses.add(d);
+            }
+            else if ("string".equals(d.getClassName())) {
+                color((Spring) d, forceColorsUsed, myForceColors, mySequentialSprings);
+            }
+            else if (isConstraint(d)) {
+                color((Spring) d, constraintColorsUsed, myConstraintColors, mySequential);
+            }
+            else {
+                mySequential.add(d);
+            }
+        }
+    }
+
+    /**
+     * Returns number of colors used by springs, bars and muscles.
+     */
+    public int getColorCount () {
+        return myForceColors.size() + myConstraintColors.size();
+    }
+
+    /**
+     * Updates every drawable of the assembly, splitting each batch in chunks.
+     *
+     * @param sim simulation being stepped
+     * @param assembly assembly being stepped
+     * @param dt elapsed time
+     * @param workers threads to run the chunks on, one chunk per thread
+     */
+    public void update (Simulation sim, Assembly assembly, double dt, StepWorkers workers) {
+        if (myChunkCount != workers.getThreadCount()) {
+            createTasks(workers.getThreadCount());
+        }
+        mySimulation = sim;
+        myAssembly = assembly;
+        myDt = dt;
+        for (int k = 0; k < myForceTasks.size(); k++) {
+            workers.runAll(myForceTasks.get(k));
+        }
+        // their forces must be in before the masses move, like those of every other spring
+        for (int k = 0; k < mySequentialSprings.size(); k++) {
+            mySequentialSprings.get(k).update(sim, assembly, dt);
+        }
+        workers.runAll(myMassTasks);
+        boolean isSolved = sim.getConstraintIterations() > 0;
+        if (!isSolved) {
+            for (int k = 0; k < myConstraintTasks.size(); k++) {
+                workers.runAll(myConstraintTasks.get(k));
+            }
+        }
+        for (int k = 0; k < mySequential.size(); k++) {
+            Drawable d = mySequential.get(k);
+            if (!isSolved || !isConstraint(d)) {
+                d.update(sim, assembly, dt);
+            }
+        }
+        if (isSolved) {
+            assembly.solveConstraints(dt);
+        }
+    }
+
+    // greedy edge coloring: the lowest color not yet used at either end
+    private void color (Spring spring, long[] colorsUsed, List<List<Drawable>> colors,
+                        List<Drawable> leftOver) {
+        Mass start = spring.getStart();
+        Mass end = spring.getEnd();
+        if (start == end || !isMember(start) || !isMember(end)) {
+            leftOver.add(spring);
+            return;
+        }
+        long used = colorsUsed[start.getSlot()] | colorsUsed[end.getSlot()];
+        if (used == -1L) {
+            leftOver.add(spring);
+            return;
+        }
+        int color = Long.numberOfTrailingZeros(~used);
+        colorsUsed[start.getSlot()] |= 1L << color;
+        colorsUsed[end.getSlot()] |= 1L << color;
+        while (colors.size() <= color) {
+            colors.add(new ArrayList<Drawable>());
+        }
+        colors.get(color).add(spring);
+    }
+
+    private boolean isConstraint (Drawable d) {
+        return "bar".equals(d.getClassName()) || "muscle".equals(d.getClassName());
+    }
+
+    private boolean isMember (Mass mass) {
+        return mass.getSlot() < myStore.size() && myStore.getView(mass.getSlot()) == mass;
+    }
+
+    private void createTasks (int chunks) {
+        myChunkCount = chunks;
+        myForceTasks = new ArrayList<List<Runnable>>();
+        for (List<Drawable> batch : myForceColors) {
+            myForceTasks.add(createTasks(batch, chunks));
+        }
+        myMassTasks = createTasks(myMasses, chunks);
+        myConstraintTasks = new ArrayList<List<Runnable>>();
+        for (List<Drawable> batch : myConstraintColors) {
+            myConstraintTasks.add(createTasks(batch, chunks));
+        }
+    }
+
+    // splits a batch into at most the given number of chunks of about equal size
+    private List<Runnable> createTasks (final List<Drawable> batch, int chunks) {
+        int chunkSize = Math.max(1, (batch.size() + chunks - 1) / chunks);
+        List<Runnable> tasks = new ArrayList<Runnable>(chunks);
+        for (int from = 0; from < batch.size(); from += chunkSize) {
+            final int first = from;
+            final int last = Math.min(batch.size(), from + chunkSize);
+            tasks.add(new Runnable() {
+                @Override
+                public void run () {
+                    for (int k = first; k < last; k++) {
+                        batch.get(k).update(mySimulation, myAssembly, myDt);
+                    }
+                }
+            });
+        }
+        return tasks;
+    }
+}
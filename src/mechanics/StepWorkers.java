@@ -0,0 +1,150 @@
+package mechanics;
+
+import java.util.List;
+
+
+/**
+ * A fixed group of threads that runs one list of tasks at a time and
+ * returns only when all of them are done, which keeps steps in lock step.
+ * Unlike an ExecutorService it creates no objects per task, so the same
+ * tasks can be run every step without making garbage. The calling thread
+ * runs tasks too, so n threads means n - 1 workers.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+class StepWorkers implements Runnable {
+    private int myThreadCount;
+    // guarded by this
+    private List<? extends Runnable> myTasks;
+    private int myNextTask;
+    private int myUnfinishedCount;
+    private long myGeneration;
+    private Throwable myFailure;
+    private boolean myIsShutDown;
+
+    /**
+     * Starts the given number of threads, counting the calling one.
+     *
+     * @param threads number of threads to run tasks on, at least 2
+     */
+    public StepWorkers (int threads) {
+        myThreadCount = threads;
+        for (int k = 1; k < threads; k++) {
+            Thread worker = new Thread(this, "simulation worker");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Returns number of threads tasks run on, counting the calling one.
+     */
+    public int getThreadCount () {
+        return myThreadCount;
+    }
+
+    /**
+     * Runs the given tasks and waits until all are done.
+     *
+     * @param tasks tasks to run, not changed until this returns
+     */
+    public void runAll (List<? extends Runnable> tasks) {
+        synchronized (this) {
+            myTasks = tasks;
+            myNextTask = 0;
+            myUnfinishedCount = tasks.size();
+            myFailure = null;
+            myGeneration++;
+            notifyAll();
+        }
+        runTasks();
+        boolean isInterrupted = false;
+        Throwable failure;
+        synchronized (this) {
+            // tasks still running touch the simulation, so they must be waited for
+            while (myUnfinishedCount > 0) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            myTasks = null;
+            failure = myFailure;
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("assembly update failed", failure);
+        }
+    }
+
+    /**
+     * Stops the workers once they are done with the current tasks.
+     */
+    public synchronized void shutdown () {
+        myIsShutDown = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run () {
+        long generation = 0;
+        while (true) {
+            synchronized (this) {
+                while (myGeneration == generation && !myIsShutDown) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (myIsShutDown) {
+                    return;
+                }
+                generation = myGeneration;
+            }
+            runTasks();
+        }
+    }
+
+    private void runTasks () {
+        for (Runnable task = nextTask(); task != null; task = nextTask()) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                fail(e);
+            }
+            catch (Error e) {
+                fail(e);
+            }
+            finally {
+                finish();
+            }
+        }
+    }
+
+    private synchronized Runnable nextTask () {
+        if (myTasks == null || myNextTask >= myTasks.size()) {
+            return null;
+        }
+        return myTasks.get(myNextTask++);
+    }
+
+    private synchronized void fail (Throwable e) {
+        if (myFailure == null) {
+            myFailure = e;
+        }
+    }
+
+    private synchronized void finish () {
+        myUnfinishedCount--;
+        if (myUnfinishedCount == 0) {
+            notifyAll();
+        }
+    }
+}
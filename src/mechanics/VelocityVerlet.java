@@ -0,0 +1,29 @@
+package mechanics;
+
+/**
+ * Velocity Verlet: half a kick with the forces at the start, a full move,
+ * then half a kick with the forces at the new positions. Second order and
+ * symplectic, so energy does not drift the way it does with Euler.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class VelocityVerlet implements Integrator {
+    private static final double STABILITY_LIMIT = 2;
+
+    @Override
+    public void step (Simulation sim, Assembly assembly, double dt) {
+        MassStore masses = assembly.getMasses();
+        double halfKick = assembly.getImpulseScale() / 2;
+        assembly.gatherForces(dt);
+        masses.accelerate(halfKick);
+        masses.move(dt);
+        assembly.gatherForces(dt);
+        masses.accelerate(halfKick);
+        assembly.applyConstraints(dt);
+    }
+
+    @Override
+    public double getStabilityLimit () {
+        return STABILITY_LIMIT;
+    }
+}
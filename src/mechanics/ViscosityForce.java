@@ -1,9 +1,6 @@
 package mechanics;
 
-import drawings.Mass;
-import java.awt.event.KeyEvent;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.IOException;
 
 /**
  * Handles viscosity force.
@@ -11,29 +8,19 @@ import java.util.Scanner;
  * @author Jei Min Yoo, Volodymyr Zavidovych
  *
  */
-public class ViscosityForce extends Force {
-
-    private static double ourViscosity = 0;
-    private int myKeyCode = KeyEvent.VK_V;
-    /**
-     * @param mass mass to apply force to
-     * @param forces information about environment's forces
-     */
-    public ViscosityForce (Mass mass, HashMap<Integer, Force> forces) {
-        boolean forceToggle = forces.get(myKeyCode).getToggle();
-        Force velocity = new Force(mass.getVelocity());
-        velocity.negate();
-        setMagnitude(velocity.getMagnitude() * ourViscosity);
-        setDirection(velocity.getDirection());
-        setToggle(forceToggle);
+public final class ViscosityForce {
+    private ViscosityForce () {
+        // does not make sense to construct this class
     }
 
     /**
      * Processes line that came from factory
      * 
      * @param line line of input
+     * @param environment environment to set viscosity of
      */
-    public static void readInputLine(Scanner line) {
-        ourViscosity = line.nextDouble();
+    public static void readInputLine (XspReader line, Environment environment)
+        throws IOException {
+        environment.setViscosity(line.nextDouble());
     }
 }
@@ -0,0 +1,329 @@
+package mechanics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+
+/**
+ * Reads .xsp files one record at a time straight from a file channel. Lines
+ * are split into whitespace separated tokens without regular expressions
+ * and, for well formed input, without creating objects per line. Malformed
+ * input is reported with its line and column.
+ *
+ * @author Jei Min Yoo & Volodymyr Zavidovych
+ */
+public class XspReader implements Closeable {
+    /**
+     * keywords that can start a record; nextKeyword returns these instances
+     */
+    public static final String[] KEYWORDS = {"mass", "spring", "muscle", "gravity", "viscosity",
+                                             "centermass", "wall"};
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    // largest mantissa that is exactly representable as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_MANTISSA_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+                                                   1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+                                                   1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final byte[][] KEYWORD_BYTES = new byte[KEYWORDS.length][];
+    static {
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            KEYWORD_BYTES[k] = KEYWORDS[k].getBytes(ASCII);
+        }
+    }
+
+    private ReadableByteChannel myChannel;
+    private ByteBuffer myBuffer;
+    private byte[] myBytes;
+    private int myPosition;
+    private int myLimit;
+    private boolean myIsAtEnd;
+    // position of the next unread character
+    private int myLine;
+    private int myColumn;
+    private boolean myIsBeforeFirstLine;
+    // last token read
+    private byte[] myToken = new byte[32];
+    private int myTokenLength;
+    private int myTokenColumn;
+
+    /**
+     * Opens the given file for reading.
+     *
+     * @param file .xsp file to read
+     */
+    public XspReader (File file) throws IOException {
+        this(new FileInputStream(file).getChannel());
+    }
+
+    /**
+     * Reads from the given channel.
+     *
+     * @param channel source of .xsp text
+     */
+    public XspReader (ReadableByteChannel channel) {
+        myChannel = channel;
+        myBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        myBytes = myBuffer.array();
+        myLine = 1;
+        myColumn = 1;
+        myIsBeforeFirstLine = true;
+    }
+
+    /**
+     * Moves to the start of the next line, skipping whatever is left on the
+     * current one.
+     *
+     * @return false if there are no more lines
+     */
+    public boolean nextLine () throws IOException {
+        if (myIsBeforeFirstLine) {
+            myIsBeforeFirstLine = false;
+        }
+        else {
+            int c;
+            do {
+                c = read();
+            }
+            while (c != '\n' && c >= 0);
+        }
+        return peek() >= 0;
+    }
+
+    /**
+     * Returns line number of the current line, starting at 1.
+     */
+    public int getLine () {
+        return myLine;
+    }
+
+    /**
+     * Reads the first token of a line and returns the matching entry of
+     * KEYWORDS, or null if the line is blank or starts with anything else.
+     */
+    public String nextKeyword () throws IOException {
+        readToken();
+        for (int k = 0; k < KEYWORD_BYTES.length; k++) {
+            if (tokenEquals(KEYWORD_BYTES[k])) {
+                return KEYWORDS[k];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads an integer from the current line.
+     */
+    public int nextInt () throws IOException {
+        readToken();
+        if (myTokenLength == 0) {
+            throw error("expected an integer");
+        }
+        int k = 0;
+        boolean isNegative = myToken[0] == '-';
+        if (isNegative || myToken[0] == '+') {
+            k++;
+        }
+        if (k == myTokenLength) {
+            throw error("expected an integer");
+        }
+        long value = 0;
+        for (; k < myTokenLength; k++) {
+            int digit = myToken[k] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("expected an integer");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error("expected an integer that fits in 32 bits");
+            }
+        }
+        value = isNegative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("expected an integer that fits in 32 bits");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a number from the current line.
+     */
+    public double nextDouble () throws IOException {
+        readToken();
+        if (myTokenLength == 0) {
+            throw error("expected a number");
+        }
+        double value = parseSimpleDouble();
+        if (!Double.isNaN(value)) {
+            return value;
+        }
+        // anything unusual (long mantissas, NaN, hexadecimal) goes the slow way
+        try {
+            return Double.parseDouble(getToken());
+        }
+        catch (NumberFormatException e) {
+            throw error("expected a number");
+        }
+    }
+
+    @Override
+    public void close () throws IOException {
+        myChannel.close();
+    }
+
+    // parses [+-]digits[.digits][(e|E)[+-]digits], returning NaN if the
+    // token has any other form or cannot be converted exactly this way
+    private double parseSimpleDouble () {
+        int k = 0;
+        boolean isNegative = myToken[0] == '-';
+        if (isNegative || myToken[0] == '+') {
+            k++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean isFraction = false;
+        for (; k < myTokenLength; k++) {
+            int c = myToken[k];
+            if (c >= '0' && c <= '9') {
+                if (digits == MAX_MANTISSA_DIGITS) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (isFraction) {
+                    fractionDigits++;
+                }
+            }
+            else if (c == '.' && !isFraction) {
+                isFraction = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        int exponent = 0;
+        if (k < myTokenLength) {
+            if (myToken[k] != 'e' && myToken[k] != 'E') {
+                return Double.NaN;
+            }
+            k++;
+            boolean isNegativeExponent = k < myTokenLength && myToken[k] == '-';
+            if (k < myTokenLength && (isNegativeExponent || myToken[k] == '+')) {
+                k++;
+            }
+            if (k == myTokenLength) {
+                return Double.NaN;
+            }
+            for (; k < myTokenLength; k++) {
+                int digit = myToken[k] - '0';
+                if (digit < 0 || digit > 9 || exponent > POWERS_OF_TEN.length) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + digit;
+            }
+            exponent = isNegativeExponent ? -exponent : exponent;
+        }
+        exponent -= fractionDigits;
+        if (mantissa >= MAX_EXACT_MANTISSA || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        // both operands are exact, so a single multiply or divide rounds correctly
+        double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] :
+                                         mantissa / POWERS_OF_TEN[-exponent];
+        return isNegative ? -value : value;
+    }
+
+    private void readToken () throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\r') {
+            read();
+            c = peek();
+        }
+        myTokenColumn = myColumn;
+        myTokenLength = 0;
+        while (c > ' ') {
+            if (myTokenLength == myToken.length) {
+                byte[] token = new byte[myToken.length * 2];
+                System.arraycopy(myToken, 0, token, 0, myTokenLength);
+                myToken = token;
+            }
+            myToken[myTokenLength++] = (byte) read();
+            c = peek();
+        }
+    }
+
+    private boolean tokenEquals (byte[] word) {
+        if (word.length != myTokenLength) {
+            return false;
+        }
+        for (int k = 0; k < myTokenLength; k++) {
+            if (word[k] != myToken[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getToken () {
+        return new String(myToken, 0, myTokenLength, ASCII);
+    }
+
+    private IllegalArgumentException error (String message) {
+        String found = (myTokenLength == 0) ? "end of line" : "'" + getToken() + "'";
+        return new IllegalArgumentException("line " + myLine + ", column " + myTokenColumn +
+                                            ": " + message + " but found " + found);
+    }
+
+    // next character, or -1 at end of input, without consuming it
+    private int peek () throws IOException {
+        if (myPosition == myLimit && !fill()) {
+            return -1;
+        }
+        return myBytes[myPosition] & 0xff;
+    }
+
+    private int read () throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            myPosition++;
+            if (c == '\n') {
+                myLine++;
+                myColumn = 1;
+            }
+            else {
+                myColumn++;
+            }
+        }
+        return c;
+    }
+
+    private boolean fill () throws IOException {
+        if (myIsAtEnd) {
+            return false;
+        }
+        myBuffer.clear();
+        int count;
+        do {
+            count = myChannel.read(myBuffer);
+        }
+        while (count == 0);
+        if (count < 0) {
+            myIsAtEnd = true;
+            return false;
+        }
+        myPosition = 0;
+        myLimit = count;
+        return true;
+    }
+}